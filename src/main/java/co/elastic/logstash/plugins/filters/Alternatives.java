@@ -0,0 +1,53 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// the combined pattern matches with the leftmost alternative, ties going to the earlier one
+final class Alternatives {
+
+    private final List<String> patterns;
+    private final CompiledGrok[] alternatives;
+
+    private Alternatives(List<String> patterns, CompiledGrok[] alternatives) {
+        this.patterns = patterns;
+        this.alternatives = alternatives;
+    }
+
+    static Alternatives compile(List<String> patterns, Grok grok, ThreadWatchdog threadWatchdog) {
+        CompiledGrok[] alternatives = new CompiledGrok[patterns.size()];
+        for (int k = 0; k < alternatives.length; k++) {
+            alternatives[k] = CompiledGrok.compile(grok, patterns.get(k), threadWatchdog);
+        }
+        return new Alternatives(patterns, alternatives);
+    }
+
+    int size() {
+        return alternatives.length;
+    }
+
+    String pattern(int k) {
+        return patterns.get(k);
+    }
+
+    int search(int k, byte[] bytes) {
+        return alternatives[k].search(bytes, 0);
+    }
+
+    int winner(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int winner = -1;
+        int winnerOffset = Integer.MAX_VALUE;
+        for (int k = 0; k < alternatives.length; k++) {
+            int offset = alternatives[k].search(bytes, 0);
+            if (offset >= 0 && offset < winnerOffset) {
+                winner = k;
+                winnerOffset = offset;
+            }
+        }
+        return winner;
+    }
+}
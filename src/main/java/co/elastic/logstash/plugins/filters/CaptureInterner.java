@@ -0,0 +1,132 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// lock-free table of the distinct values of a field, dropped once it has seen more than MAX_VALUES
+final class CaptureInterner {
+
+    static final int MAX_VALUES = 64;
+    static final int MAX_LENGTH = 64;
+
+    // twice the number of values so that probe sequences stay short and always reach a free slot
+    private static final int CAPACITY = 2 * MAX_VALUES;
+
+    private volatile AtomicReferenceArray<Value> table = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicInteger size = new AtomicInteger();
+
+    String intern(byte[] bytes, int start, int end) {
+        AtomicReferenceArray<Value> values = table;
+        if (values == null || end - start > MAX_LENGTH) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+        int hash = 0;
+        for (int k = start; k < end; k++) {
+            hash = 31 * hash + (bytes[k] & 0xff);
+        }
+        for (int slot = hash & (CAPACITY - 1), probes = 0; probes < CAPACITY; slot = (slot + 1) & (CAPACITY - 1), probes++) {
+            Value value = values.get(slot);
+            if (value == null) {
+                value = insert(values, slot, new Value(hash, new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+                if (value == null) {
+                    return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                }
+            }
+            if (value.hash == hash && value.equals(bytes, start, end)) {
+                return value.string;
+            }
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    String intern(String string) {
+        AtomicReferenceArray<Value> values = table;
+        if (values == null || string.length() > MAX_LENGTH) {
+            return string;
+        }
+        // hash and measure the UTF-8 encoding so that both lookups agree on slots and on the length limit
+        int hash = 0;
+        int length = 0;
+        for (int k = 0; k < string.length(); k++) {
+            int c = string.charAt(k);
+            if (c < 0x80) {
+                hash = 31 * hash + c;
+                length += 1;
+            } else if (c < 0x800) {
+                hash = 31 * (31 * hash + (0xc0 | c >> 6)) + (0x80 | c & 0x3f);
+                length += 2;
+            } else if (Character.isHighSurrogate((char) c) && k + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(k + 1))) {
+                c = Character.toCodePoint((char) c, string.charAt(++k));
+                hash = 31 * (31 * (31 * (31 * hash + (0xf0 | c >> 18)) + (0x80 | c >> 12 & 0x3f))
+                        + (0x80 | c >> 6 & 0x3f)) + (0x80 | c & 0x3f);
+                length += 4;
+            } else if (Character.isSurrogate((char) c)) {
+                // an unpaired surrogate has no UTF-8 encoding that a byte range could match
+                return string;
+            } else {
+                hash = 31 * (31 * (31 * hash + (0xe0 | c >> 12)) + (0x80 | c >> 6 & 0x3f)) + (0x80 | c & 0x3f);
+                length += 3;
+            }
+        }
+        if (length > MAX_LENGTH) {
+            return string;
+        }
+        for (int slot = hash & (CAPACITY - 1), probes = 0; probes < CAPACITY; slot = (slot + 1) & (CAPACITY - 1), probes++) {
+            Value value = values.get(slot);
+            if (value == null) {
+                value = insert(values, slot, new Value(hash, string));
+                if (value == null) {
+                    return string;
+                }
+            }
+            if (value.hash == hash && value.string.equals(string)) {
+                return value.string;
+            }
+        }
+        return string;
+    }
+
+    boolean saturated() {
+        return table == null;
+    }
+
+    // returns the value now in the slot, which another thread may have filled first, or null once saturated
+    private Value insert(AtomicReferenceArray<Value> values, int slot, Value value) {
+        if (size.get() >= MAX_VALUES) {
+            table = null;
+            return null;
+        }
+        if (values.compareAndSet(slot, null, value)) {
+            size.incrementAndGet();
+            return value;
+        }
+        return values.get(slot);
+    }
+
+    private static final class Value {
+
+        final int hash;
+        final String string;
+        final byte[] bytes;
+
+        Value(int hash, String string) {
+            this.hash = hash;
+            this.string = string;
+            this.bytes = string.getBytes(StandardCharsets.UTF_8);
+        }
+
+        boolean equals(byte[] other, int start, int end) {
+            if (end - start != bytes.length) {
+                return false;
+            }
+            for (int k = 0; k < bytes.length; k++) {
+                if (bytes[k] != other[start + k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
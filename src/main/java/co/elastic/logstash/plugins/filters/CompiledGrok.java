@@ -0,0 +1,184 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.NameEntry;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Region;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// a grok expression run on joni directly to match byte ranges, extracting captures as Grok.captures does
+final class CompiledGrok {
+
+    private static final Field COMPILED_EXPRESSION;
+
+    static {
+        try {
+            COMPILED_EXPRESSION = Grok.class.getDeclaredField("compiledExpression");
+            COMPILED_EXPRESSION.setAccessible(true);
+        } catch (NoSuchFieldException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private final Regex regex;
+    private final ThreadWatchdog threadWatchdog;
+    private final NamedGroup[] namedGroups;
+    private final CaptureInterner[] interners;
+
+    private CompiledGrok(Regex regex, ThreadWatchdog threadWatchdog, Map<String, CaptureInterner> fieldInterners) {
+        this.regex = regex;
+        this.threadWatchdog = threadWatchdog;
+
+        List<NamedGroup> groups = new ArrayList<>();
+        if (regex.numberOfNames() > 0) {
+            for (Iterator<NameEntry> it = regex.namedBackrefIterator(); it.hasNext(); ) {
+                NameEntry e = it.next();
+                String groupName = new String(e.name, e.nameP, e.nameEnd - e.nameP, StandardCharsets.UTF_8);
+                groups.add(new NamedGroup(groupName, e.getBackRefs()));
+            }
+        }
+        this.namedGroups = groups.toArray(new NamedGroup[0]);
+        this.interners = new CaptureInterner[namedGroups.length];
+        for (int k = 0; k < namedGroups.length; k++) {
+            if (namedGroups[k].type.equals("string")) {
+                interners[k] = fieldInterners.get(namedGroups[k].fieldName);
+            }
+        }
+    }
+
+    static CompiledGrok compile(Grok grok, String grokPattern, ThreadWatchdog threadWatchdog) {
+        return compile(grok, grokPattern, threadWatchdog, Collections.emptyMap());
+    }
+
+    static CompiledGrok compile(Grok grok, String grokPattern, ThreadWatchdog threadWatchdog,
+                                Map<String, CaptureInterner> interners) {
+        byte[] expressionBytes = grok.toRegex(grokPattern).getBytes(StandardCharsets.UTF_8);
+        Regex regex = new Regex(expressionBytes, 0, expressionBytes.length, Option.NONE, UTF8Encoding.INSTANCE);
+        return new CompiledGrok(regex, threadWatchdog, interners);
+    }
+
+    // reuses the regex the Grok constructor compiled for its own expression
+    static CompiledGrok of(Grok grok, ThreadWatchdog threadWatchdog, Map<String, CaptureInterner> interners) {
+        try {
+            return new CompiledGrok((Regex) COMPILED_EXPRESSION.get(grok), threadWatchdog, interners);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    Map<String, Object> captures(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Matcher matcher = regex.matcher(bytes);
+        int result = search(matcher, 0, bytes.length);
+        return result < 0 ? null : extract(matcher, bytes);
+    }
+
+    // matches the range as if it were the whole text
+    boolean captures(byte[] bytes, int start, int end, Map<String, Object> captures) {
+        Matcher matcher = regex.matcher(bytes, start, end);
+        if (search(matcher, start, end) < 0) {
+            return false;
+        }
+        extract(matcher, bytes, start, captures);
+        return true;
+    }
+
+    boolean matches(String text) {
+        return search(text.getBytes(StandardCharsets.UTF_8), 0) >= 0;
+    }
+
+    boolean matches(byte[] bytes, int start, int end) {
+        return search(regex.matcher(bytes, start, end), start, end) >= 0;
+    }
+
+    int search(byte[] bytes, int start) {
+        return search(regex.matcher(bytes), start, bytes.length);
+    }
+
+    // the captures of a match anchored at start, or null
+    Map<String, Object> capturesAt(byte[] bytes, int start) {
+        Matcher matcher = regex.matcher(bytes);
+        int result;
+        try {
+            threadWatchdog.register();
+            result = matcher.match(start, bytes.length, Option.NONE);
+        } finally {
+            threadWatchdog.unregister();
+        }
+        checkInterrupted(result);
+        return result < 0 ? null : extract(matcher, bytes);
+    }
+
+    private int search(Matcher matcher, int start, int end) {
+        int result;
+        try {
+            threadWatchdog.register();
+            result = matcher.search(start, end, Option.NONE);
+        } finally {
+            threadWatchdog.unregister();
+        }
+        checkInterrupted(result);
+        return result;
+    }
+
+    private void checkInterrupted(int result) {
+        if (result == Matcher.INTERRUPTED) {
+            throw new RuntimeException("grok pattern matching was interrupted after [" +
+                    threadWatchdog.maxExecutionTimeInMillis() + "] ms");
+        }
+    }
+
+    private Map<String, Object> extract(Matcher matcher, byte[] bytes) {
+        return extract(matcher, bytes, 0, new HashMap<>());
+    }
+
+    // region offsets are relative to the start of the text the matcher was created for
+    private Map<String, Object> extract(Matcher matcher, byte[] bytes, int offset, Map<String, Object> fields) {
+        if (namedGroups.length > 0) {
+            Region region = matcher.getEagerRegion();
+            for (int k = 0; k < namedGroups.length; k++) {
+                NamedGroup group = namedGroups[k];
+                for (int number : group.backRefs) {
+                    if (region.beg[number] >= 0) {
+                        int start = offset + region.beg[number];
+                        int end = offset + region.end[number];
+                        if (interners[k] != null) {
+                            fields.put(group.fieldName, interners[k].intern(bytes, start, end));
+                            break;
+                        }
+                        fields.put(group.fieldName, NumericCoercion.coerce(bytes, start, end, group.type));
+                        break;
+                    }
+                }
+            }
+        }
+        return fields;
+    }
+
+    // group names have the form PATTERN[:field[:type]]
+    private static class NamedGroup {
+
+        final String fieldName;
+        final String type;
+        final int[] backRefs;
+
+        NamedGroup(String groupName, int[] backRefs) {
+            String[] parts = groupName.split(":");
+            this.fieldName = parts.length >= 2 ? parts[1] : parts[0];
+            this.type = parts.length == 3 ? parts[2] : "string";
+            this.backRefs = backRefs;
+        }
+    }
+}
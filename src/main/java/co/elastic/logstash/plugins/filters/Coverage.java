@@ -0,0 +1,115 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// counts the evaluations and matches of an entry and, on a sample, which alternative matched
+final class Coverage {
+
+    private final String sourceField;
+    private final Alternatives alternatives;
+    private final long sampleRate;
+
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder[] alternativeEvaluated;
+    private final LongAdder[] alternativeWon;
+    private final LongAdder[] alternativeNanos;
+
+    Coverage(String sourceField, Alternatives alternatives, long sampleRate) {
+        this.sourceField = sourceField;
+        this.alternatives = alternatives;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.alternativeEvaluated = newAdders(alternatives.size());
+        this.alternativeWon = newAdders(alternatives.size());
+        this.alternativeNanos = newAdders(alternatives.size());
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int k = 0; k < size; k++) {
+            adders[k] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // sampled at random so that workers need not share a counter
+    void record(String source, long elapsedNanos, boolean entryMatched) {
+        evaluated.increment();
+        nanos.add(elapsedNanos);
+        if (entryMatched) {
+            matched.increment();
+        }
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextLong(sampleRate) == 0) {
+            sample(source);
+        }
+    }
+
+    private void sample(String source) {
+        sampled.increment();
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        int winner = -1;
+        int winnerOffset = Integer.MAX_VALUE;
+        for (int k = 0; k < alternatives.size(); k++) {
+            int offset = -1;
+            long start = System.nanoTime();
+            try {
+                offset = alternatives.search(k, bytes);
+            } catch (RuntimeException ex) {
+                if (!Jgrok.isTimeout(ex)) {
+                    throw ex;
+                }
+            }
+            alternativeNanos[k].add(System.nanoTime() - start);
+            alternativeEvaluated[k].increment();
+            if (offset >= 0 && offset < winnerOffset) {
+                winner = k;
+                winnerOffset = offset;
+            }
+        }
+        if (winner >= 0) {
+            alternativeWon[winner].increment();
+        }
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("evaluated", evaluated.sum());
+        snapshot.put("matched", matched.sum());
+        snapshot.put("nanos", nanos.sum());
+        snapshot.put("sampled", sampled.sum());
+        List<Object> alternativeSnapshots = new ArrayList<>();
+        for (int k = 0; k < alternatives.size(); k++) {
+            Map<String, Object> alternative = new LinkedHashMap<>();
+            alternative.put("pattern", alternatives.pattern(k));
+            alternative.put("evaluated", alternativeEvaluated[k].sum());
+            alternative.put("won", alternativeWon[k].sum());
+            alternative.put("nanos", alternativeNanos[k].sum());
+            alternativeSnapshots.add(alternative);
+        }
+        snapshot.put("alternatives", alternativeSnapshots);
+        return snapshot;
+    }
+
+    void appendTo(StringBuilder report) {
+        long evaluatedSum = evaluated.sum();
+        long sampledSum = sampled.sum();
+        report.append(String.format("%n  match entry '%s': evaluated %d, matched %d, %.1f ms, %d sampled",
+                sourceField, evaluatedSum, matched.sum(), nanos.sum() / 1e6, sampledSum));
+        for (int k = 0; k < alternatives.size(); k++) {
+            long won = alternativeWon[k].sum();
+            long evaluations = alternativeEvaluated[k].sum();
+            report.append(String.format("%n    alternative %d: won %d (%.2f%%), %.1f us per evaluation%s: %s",
+                    k, won, sampledSum == 0 ? 0 : 100.0 * won / sampledSum,
+                    evaluations == 0 ? 0 : alternativeNanos[k].sum() / 1e3 / evaluations,
+                    won == 0 && sampledSum > 0 ? ", never won" : "", alternatives.pattern(k)));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.ThreadWatchdog;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// each thread counts its registrations in its own slot, which one monitor thread scans for overdue matches
+final class DeadlineWatchdog implements ThreadWatchdog {
+
+    private static final Monitor MONITOR = new Monitor();
+    private static final ThreadLocal<Slot> SLOT = ThreadLocal.withInitial(MONITOR::newSlot);
+
+    private final long maxExecutionTimeMillis;
+    private final long checkIntervalMillis;
+
+    private DeadlineWatchdog(long maxExecutionTimeMillis, long checkIntervalMillis) {
+        this.maxExecutionTimeMillis = maxExecutionTimeMillis;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    static ThreadWatchdog newInstance(long checkIntervalMillis, long maxExecutionTimeMillis) {
+        if (maxExecutionTimeMillis <= 0) {
+            return ThreadWatchdog.noop();
+        }
+        DeadlineWatchdog watchdog = new DeadlineWatchdog(maxExecutionTimeMillis, Math.max(1, checkIntervalMillis));
+        MONITOR.add(watchdog);
+        return watchdog;
+    }
+
+    // the interval the monitor currently checks at
+    static long checkIntervalMillis() {
+        return MONITOR.intervalMillis;
+    }
+
+    @Override
+    public void register() {
+        Slot slot = SLOT.get();
+        slot.maxExecutionTimeMillis = maxExecutionTimeMillis;
+        // only the owning thread writes the counter, so an ordered store suffices
+        Slot.REGISTRATIONS.lazySet(slot, slot.registrations + 1);
+    }
+
+    @Override
+    public long maxExecutionTimeInMillis() {
+        return maxExecutionTimeMillis;
+    }
+
+    @Override
+    public void unregister() {
+        Slot slot = SLOT.get();
+        Slot.REGISTRATIONS.lazySet(slot, slot.registrations + 1);
+    }
+
+    private static final class Slot {
+
+        static final AtomicLongFieldUpdater<Slot> REGISTRATIONS =
+                AtomicLongFieldUpdater.newUpdater(Slot.class, "registrations");
+
+        final WeakReference<Thread> thread;
+        volatile long registrations;
+        long maxExecutionTimeMillis;
+
+        // only accessed by the monitor thread
+        long seenRegistration;
+        long seenAtMillis;
+
+        Slot(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+    }
+
+    private static final class Monitor implements Runnable {
+
+        // slots are only added and removed under the monitor's lock and the array is replaced on every change
+        private volatile Slot[] slots = new Slot[0];
+        private volatile long intervalMillis = Long.MAX_VALUE;
+        private final List<WeakReference<DeadlineWatchdog>> watchdogs = new ArrayList<>();
+        private Thread thread;
+
+        synchronized Slot newSlot() {
+            Slot slot = new Slot(Thread.currentThread());
+            Slot[] grown = Arrays.copyOf(slots, slots.length + 1);
+            grown[slots.length] = slot;
+            slots = grown;
+            return slot;
+        }
+
+        synchronized void add(DeadlineWatchdog watchdog) {
+            watchdogs.add(new WeakReference<>(watchdog));
+            if (watchdog.checkIntervalMillis < intervalMillis) {
+                intervalMillis = watchdog.checkIntervalMillis;
+                if (thread == null) {
+                    thread = new Thread(this, "GrokDeadlineWatchdog");
+                    thread.setDaemon(true);
+                    thread.start();
+                } else {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    // woken up to pick up a shorter interval
+                }
+                long now = System.nanoTime() / 1_000_000;
+                boolean terminated = false;
+                for (Slot slot : slots) {
+                    Thread matching = slot.thread.get();
+                    long registration = slot.registrations;
+                    if (matching == null || !matching.isAlive()) {
+                        terminated = true;
+                    } else if ((registration & 1) == 0) {
+                        continue;
+                    } else if (registration != slot.seenRegistration) {
+                        slot.seenRegistration = registration;
+                        slot.seenAtMillis = now;
+                    } else if (now - slot.seenAtMillis >= slot.maxExecutionTimeMillis
+                            && slot.registrations == registration) {
+                        matching.interrupt();
+                    }
+                }
+                if (terminated) {
+                    removeTerminated();
+                }
+                recomputeInterval();
+            }
+        }
+
+        // the interval grows back once the watchdogs that asked for shorter ones are no longer in use
+        private synchronized void recomputeInterval() {
+            long interval = Long.MAX_VALUE;
+            for (Iterator<WeakReference<DeadlineWatchdog>> it = watchdogs.iterator(); it.hasNext(); ) {
+                DeadlineWatchdog watchdog = it.next().get();
+                if (watchdog == null) {
+                    it.remove();
+                } else {
+                    interval = Math.min(interval, watchdog.checkIntervalMillis);
+                }
+            }
+            intervalMillis = interval;
+        }
+
+        private synchronized void removeTerminated() {
+            slots = Arrays.stream(slots)
+                    .filter(slot -> slot.thread.get() != null && slot.thread.get().isAlive())
+                    .toArray(Slot[]::new);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// DATA fields split at the first occurrence of their delimiter, so a single scan needs no backtracking
+class DissectPattern implements PatternMatcher {
+
+    private static final String DATA = "DATA";
+    private static final String GREEDYDATA = "GREEDYDATA";
+
+    private final String prefix;
+    private final Field[] fields;
+
+    private DissectPattern(String prefix, Field[] fields) {
+        this.prefix = prefix;
+        this.fields = fields;
+    }
+
+    static DissectPattern compile(List<String> patterns, Map<String, String> patternBank) {
+        if (patterns.size() != 1) {
+            return null;
+        }
+        List<GrokPatternParser.Part> parts = GrokPatternParser.parse(patterns.get(0), patternBank,
+                name -> (name.equals(DATA) || name.equals(GREEDYDATA)) && GrokPatternParser.isBuiltin(name, patternBank));
+        if (parts == null || parts.isEmpty()) {
+            return null;
+        }
+
+        int k = 0;
+        String prefix = "";
+        if (parts.get(0).literal != null) {
+            prefix = parts.get(0).literal;
+            k++;
+        }
+        int fieldCount = (parts.size() - k + 1) / 2;
+        if (fieldCount == 0) {
+            return null;
+        }
+        Field[] fields = new Field[fieldCount];
+        for (int f = 0; f < fieldCount; f++, k += 2) {
+            GrokPatternParser.Part token = parts.get(k);
+            String delimiter = k + 1 < parts.size() ? parts.get(k + 1).literal : null;
+            if (token.name == null || (delimiter == null && k + 1 < parts.size())) {
+                return null;
+            }
+            // GREEDYDATA would split at the last delimiter occurrence, so it is only supported at the end
+            boolean greedy = token.name.equals(GREEDYDATA);
+            if (greedy && delimiter != null) {
+                return null;
+            }
+            fields[f] = new Field(token.fieldName, token.type, delimiter, greedy);
+        }
+        return new DissectPattern(prefix, fields);
+    }
+
+    @Override
+    public Map<String, Object> captures(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || Character.isSurrogate(c)) {
+                return UNDECIDED;
+            }
+        }
+
+        int pos = 0;
+        if (prefix.length() > 0) {
+            pos = text.indexOf(prefix);
+            if (pos == -1) {
+                return null;
+            }
+            pos += prefix.length();
+        }
+        Map<String, Object> captures = new HashMap<>();
+        for (Field field : fields) {
+            int end;
+            int next;
+            if (field.delimiter != null) {
+                end = text.indexOf(field.delimiter, pos);
+                if (end == -1) {
+                    return null;
+                }
+                next = end + field.delimiter.length();
+            } else {
+                end = field.greedy ? text.length() : pos;
+                next = end;
+            }
+            if (field.fieldName != null) {
+                captures.put(field.fieldName, NumericCoercion.coerce(text.substring(pos, end), field.type));
+            }
+            pos = next;
+        }
+        return captures;
+    }
+
+    private static class Field {
+
+        final String fieldName;
+        final String type;
+        final String delimiter;
+        final boolean greedy;
+
+        Field(String fieldName, String type, String delimiter, boolean greedy) {
+            this.fieldName = fieldName;
+            this.type = type;
+            this.delimiter = delimiter;
+            this.greedy = greedy;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+// tries entries in increasing order of time per match, which minimizes the expected cost of the search
+final class EntryPlanner {
+
+    private final LongAdder[] nanos;
+    private final LongAdder[] matched;
+
+    // only accessed under the planner's lock
+    private final long[] plannedNanos;
+    private final long[] plannedMatched;
+    private final double[] decayedNanos;
+    private final double[] decayedMatched;
+
+    private volatile int[] order;
+
+    EntryPlanner(int entries) {
+        this.nanos = new LongAdder[entries];
+        this.matched = new LongAdder[entries];
+        for (int k = 0; k < entries; k++) {
+            nanos[k] = new LongAdder();
+            matched[k] = new LongAdder();
+        }
+        this.plannedNanos = new long[entries];
+        this.plannedMatched = new long[entries];
+        this.decayedNanos = new double[entries];
+        this.decayedMatched = new double[entries];
+        this.order = new int[entries];
+        for (int k = 0; k < entries; k++) {
+            order[k] = k;
+        }
+    }
+
+    // replaced rather than modified when the order changes
+    int[] order() {
+        return order;
+    }
+
+    void record(int entry, long elapsedNanos, boolean entryMatched) {
+        nanos[entry].add(elapsedNanos);
+        if (entryMatched) {
+            matched[entry].increment();
+        }
+    }
+
+    // the sums halve on every plan so that the order follows the input
+    synchronized void plan() {
+        double[] ratios = new double[order.length];
+        for (int k = 0; k < order.length; k++) {
+            long nanosSum = nanos[k].sum();
+            long matchedSum = matched[k].sum();
+            decayedNanos[k] = decayedNanos[k] / 2 + (nanosSum - plannedNanos[k]);
+            decayedMatched[k] = decayedMatched[k] / 2 + (matchedSum - plannedMatched[k]);
+            plannedNanos[k] = nanosSum;
+            plannedMatched[k] = matchedSum;
+            ratios[k] = decayedMatched[k] > 0 ? decayedNanos[k] / decayedMatched[k] : Double.POSITIVE_INFINITY;
+        }
+        Integer[] planned = new Integer[order.length];
+        for (int k = 0; k < planned.length; k++) {
+            planned[k] = k;
+        }
+        // the sort is stable, so ties keep the declared order
+        Arrays.sort(planned, Comparator.comparingDouble((Integer k) -> ratios[k]));
+        order = Arrays.stream(planned).mapToInt(Integer::intValue).toArray();
+    }
+}
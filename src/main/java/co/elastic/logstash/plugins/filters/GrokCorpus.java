@@ -0,0 +1,350 @@
+package co.elastic.logstash.plugins.filters;
+
+import co.elastic.logstash.api.Configuration;
+import co.elastic.logstash.api.Event;
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// records sampled log lines into a length-prefixed corpus and replays it through a filter
+public final class GrokCorpus {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage:",
+            "  GrokCorpus record <log file> <corpus file> [sample every nth line]",
+            "             each line is recorded as one source-field value",
+            "  GrokCorpus replay <corpus file> --match <field>=<pattern> [--match <field>=<pattern> ...]",
+            "             [--pattern-definition <name>=<pattern> ...] [--patterns-dir <dir> ...]",
+            "             [--iterations <n>] [--warmup-iterations <n>] [--timeout-millis <n>]");
+
+    // a single mapping cannot exceed 2 GB
+    private static final int CHUNK_SIZE = 1 << 30;
+
+    private GrokCorpus() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("record")) {
+            int sampleRate = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                int recorded = record(in, Paths.get(args[2]), sampleRate);
+                System.out.println("Recorded " + recorded + " values to " + args[2]);
+            }
+        } else if (args.length >= 2 && args[0].equals("replay")) {
+            Map<String, Object> match = new LinkedHashMap<>();
+            Map<String, Object> patternDefinitions = new HashMap<>();
+            List<Object> patternsDirs = new ArrayList<>();
+            int iterations = 1;
+            int warmupIterations = 1;
+            long timeoutMillis = 5000;
+            for (int k = 2; k < args.length; k += 2) {
+                if (k + 1 >= args.length) {
+                    exitWithUsage();
+                }
+                String value = args[k + 1];
+                switch (args[k]) {
+                    case "--match":
+                        appendPattern(match, value);
+                        break;
+                    case "--pattern-definition":
+                        patternDefinitions.put(value.substring(0, value.indexOf('=')), value.substring(value.indexOf('=') + 1));
+                        break;
+                    case "--patterns-dir":
+                        patternsDirs.add(value);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(value);
+                        break;
+                    case "--warmup-iterations":
+                        warmupIterations = Integer.parseInt(value);
+                        break;
+                    case "--timeout-millis":
+                        timeoutMillis = Long.parseLong(value);
+                        break;
+                    default:
+                        exitWithUsage();
+                }
+            }
+            if (match.isEmpty()) {
+                exitWithUsage();
+            }
+
+            Map<String, Object> config = new HashMap<>();
+            config.put(Jgrok.MATCH.name(), match);
+            config.put(Jgrok.PATTERN_DEFINITIONS.name(), patternDefinitions);
+            config.put(Jgrok.PATTERNS_DIR.name(), patternsDirs);
+            config.put(Jgrok.TIMEOUT_MILLIS.name(), timeoutMillis);
+            System.out.print(replay(Paths.get(args[1]), new ConfigurationImpl(config), warmupIterations, iterations));
+        } else {
+            exitWithUsage();
+        }
+    }
+
+    private static void exitWithUsage() {
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendPattern(Map<String, Object> match, String value) {
+        int equals = value.indexOf('=');
+        if (equals < 1) {
+            exitWithUsage();
+        }
+        String field = value.substring(0, equals);
+        List<Object> patterns = (List<Object>) match.computeIfAbsent(field, f -> new ArrayList<>());
+        patterns.add(value.substring(equals + 1));
+    }
+
+    static int record(BufferedReader in, Path corpus, int sampleRate) throws IOException {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be positive");
+        }
+        int recorded = 0;
+        try (OutputStream file = Files.newOutputStream(corpus);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            String line;
+            for (long k = 0; (line = in.readLine()) != null; k++) {
+                if (k % sampleRate == 0) {
+                    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    recorded++;
+                }
+            }
+        }
+        return recorded;
+    }
+
+    // sets each value on all source fields, as the warm-up does
+    static Report replay(Path corpus, Configuration config, int warmupIterations, int iterations) throws IOException {
+        return replay(corpus, config, warmupIterations, iterations, CHUNK_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Report replay(Path corpus, Configuration config, int warmupIterations, int iterations, int chunkSize)
+            throws IOException {
+        if (warmupIterations < 0 || iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be positive and warm-up iterations must not be negative");
+        }
+        Jgrok jgrok = new Jgrok("grok-corpus", config, new ContextImpl(null));
+        Map<String, String> patternBank = Jgrok.loadPatternBank(config);
+        Map<String, Object> match = config.get(Jgrok.MATCH);
+        String tagOnTimeout = config.get(Jgrok.TAG_ON_TIMEOUT);
+        // timeouts are only told apart from failures by their tag
+        boolean countTimeouts = tagOnTimeout != null && !tagOnTimeout.equals("");
+
+        List<String> fields = new ArrayList<>();
+        List<Alternatives> alternatives = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : match.entrySet()) {
+            List<String> patterns = new ArrayList<>();
+            if (entry.getValue() instanceof List) {
+                for (Object pattern : (List<Object>) entry.getValue()) {
+                    patterns.add((String) pattern);
+                }
+            } else {
+                patterns.add((String) entry.getValue());
+            }
+            Grok grok = new Grok(patternBank, Jgrok.combinePatterns(patterns));
+            fields.add(entry.getKey());
+            alternatives.add(Alternatives.compile(patterns, grok, ThreadWatchdog.noop()));
+        }
+
+        try (FileChannel channel = FileChannel.open(corpus)) {
+            CorpusReader reader = new CorpusReader(corpus, channel, chunkSize);
+            long values = 0;
+            while (reader.hasNext()) {
+                reader.skip();
+                values++;
+            }
+            if (values * iterations > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Cannot keep the latencies of " + values + " values times " +
+                        iterations + " iterations");
+            }
+
+            Report report = new Report(fields, alternatives);
+            report.countsTimeouts = countTimeouts;
+            report.latencies = new long[(int) (values * iterations)];
+            boolean[] matched = new boolean[1];
+            for (int pass = 0; pass < warmupIterations + iterations; pass++) {
+                boolean measured = pass >= warmupIterations;
+                reader.rewind();
+                while (reader.hasNext()) {
+                    String value = new String(reader.next(), StandardCharsets.UTF_8);
+                    Event e = new org.logstash.Event();
+                    for (String field : fields) {
+                        e.setField(field, value);
+                    }
+
+                    matched[0] = false;
+                    long start = System.nanoTime();
+                    jgrok.filter(Collections.singletonList(e), event -> matched[0] = true);
+                    long latency = System.nanoTime() - start;
+
+                    if (measured) {
+                        report.latencies[report.events++] = latency;
+                        report.elapsedNanos += latency;
+                        if (matched[0]) {
+                            report.matched++;
+                        }
+                        Object tags = e.getField("tags");
+                        if (countTimeouts && tags instanceof List && ((List<?>) tags).contains(tagOnTimeout)) {
+                            report.timeouts++;
+                        }
+                        if (pass == warmupIterations) {
+                            report.countHits(value);
+                        }
+                    }
+                }
+            }
+            Arrays.sort(report.latencies);
+            return report;
+        }
+    }
+
+    // maps the corpus in windows of at most chunkSize bytes, or of one value where a value is larger
+    private static final class CorpusReader {
+
+        private final Path corpus;
+        private final FileChannel channel;
+        private final long size;
+        private final int chunkSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        CorpusReader(Path corpus, FileChannel channel, int chunkSize) throws IOException {
+            this.corpus = corpus;
+            this.channel = channel;
+            this.size = channel.size();
+            this.chunkSize = chunkSize;
+        }
+
+        boolean hasNext() {
+            return position < size;
+        }
+
+        void rewind() {
+            position = 0;
+        }
+
+        void skip() throws IOException {
+            position += 4 + length();
+        }
+
+        byte[] next() throws IOException {
+            int length = length();
+            byte[] bytes = new byte[length];
+            window(position + 4, length).get(bytes);
+            position += 4 + length;
+            return bytes;
+        }
+
+        private int length() throws IOException {
+            if (size - position < 4) {
+                throw new IOException("Corpus file '" + corpus + "' is truncated at offset " + position);
+            }
+            int length = window(position, 4).getInt();
+            if (length < 0 || length > size - position - 4) {
+                throw new IOException("Corpus file '" + corpus + "' is corrupt: the value at offset " + position +
+                        " has a length of " + length + " bytes but " + (size - position - 4) + " bytes remain");
+            }
+            return length;
+        }
+
+        private ByteBuffer window(long offset, int length) throws IOException {
+            if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(size - offset, Math.max(chunkSize, length)));
+            }
+            window.position((int) (offset - windowStart));
+            return window;
+        }
+    }
+
+    static class Report {
+
+        final List<String> fields;
+        final List<Alternatives> alternatives;
+        final long[][] hits;
+        long[] latencies;
+        int events;
+        int values;
+        int matched;
+        int timeouts;
+        boolean countsTimeouts;
+        long elapsedNanos;
+
+        Report(List<String> fields, List<Alternatives> alternatives) {
+            this.fields = fields;
+            this.alternatives = alternatives;
+            this.hits = new long[alternatives.size()][];
+            for (int k = 0; k < hits.length; k++) {
+                hits[k] = new long[alternatives.get(k).size()];
+            }
+        }
+
+        void countHits(String value) {
+            values++;
+            for (int k = 0; k < alternatives.size(); k++) {
+                int winner = alternatives.get(k).winner(value);
+                if (winner >= 0) {
+                    hits[k][winner]++;
+                }
+            }
+        }
+
+        long percentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+
+        double eventsPerSecond() {
+            return elapsedNanos == 0 ? 0 : events * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("events: %d, matched: %d, timeouts: %s, events/s: %.0f%n",
+                    events, matched, countsTimeouts ? String.valueOf(timeouts) : "not counted without tag_on_timeout",
+                    eventsPerSecond()));
+            sb.append(String.format("latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                    percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3,
+                    percentile(100) / 1e3));
+            for (int k = 0; k < fields.size(); k++) {
+                sb.append(String.format("match entry '%s':%n", fields.get(k)));
+                for (int a = 0; a < hits[k].length; a++) {
+                    sb.append(String.format("  alternative %d: %d hits (%.2f%%)%n",
+                            a, hits[k][a], values == 0 ? 0 : 100.0 * hits[k][a] / values));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
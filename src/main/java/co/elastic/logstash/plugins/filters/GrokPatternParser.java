@@ -0,0 +1,163 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// splits patterns without regex syntax into literals and references to terminal patterns
+final class GrokPatternParser {
+
+    private static final int MAX_INLINE_DEPTH = 16;
+
+    private GrokPatternParser() {
+    }
+
+    // null for regex syntax, inline definitions, named non-terminal references or duplicate fields
+    static List<Part> parse(String pattern, Map<String, String> patternBank, Predicate<String> terminal) {
+        List<Part> parts = new ArrayList<>();
+        if (!parse(pattern, patternBank, terminal, parts, 0)) {
+            return null;
+        }
+        Set<String> fieldNames = new HashSet<>();
+        for (Part part : parts) {
+            if (part.fieldName != null && !fieldNames.add(part.fieldName)) {
+                return null;
+            }
+        }
+        return parts;
+    }
+
+    // a built-in pattern can only be replaced if neither it nor anything it references has been redefined
+    static boolean isBuiltin(String name, Map<String, String> patternBank) {
+        return isBuiltin(name, patternBank, 0);
+    }
+
+    private static boolean parse(String pattern, Map<String, String> patternBank, Predicate<String> terminal,
+                                 List<Part> parts, int depth) {
+        if (depth > MAX_INLINE_DEPTH) {
+            return false;
+        }
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '{') {
+                int close = pattern.indexOf('}', i + 2);
+                if (close == -1) {
+                    return false;
+                }
+                String reference = pattern.substring(i + 2, close);
+                if (!isReference(reference)) {
+                    return false;
+                }
+                String[] names = reference.split(":");
+                String name = names[0];
+                if (terminal.test(name)) {
+                    appendLiteral(parts, literal);
+                    String fieldName = names.length >= 2 ? names[1] : null;
+                    String type = names.length == 3 ? names[2] : "string";
+                    parts.add(new Part(name, fieldName, type));
+                } else if (names.length == 1 && patternBank.containsKey(name)) {
+                    appendLiteral(parts, literal);
+                    if (!parse(patternBank.get(name), patternBank, terminal, parts, depth + 1)) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+                i = close + 1;
+            } else if (c == '\\') {
+                if (i + 1 >= pattern.length() || Character.isLetterOrDigit(pattern.charAt(i + 1))) {
+                    return false;
+                }
+                literal.append(pattern.charAt(i + 1));
+                i += 2;
+            } else if (".[]()|?*+{}^$".indexOf(c) != -1 || c >= 0x80) {
+                return false;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        appendLiteral(parts, literal);
+        return true;
+    }
+
+    // same name and subname character classes grok uses to recognize %{NAME:subname} references
+    private static boolean isReference(String reference) {
+        int colon = reference.indexOf(':');
+        int nameEnd = colon == -1 ? reference.length() : colon;
+        if (nameEnd == 0 || colon == reference.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            boolean alphanumeric = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            boolean valid = i < nameEnd
+                    ? alphanumeric || (c >= 'A' && c <= 'z')
+                    : alphanumeric || "@[]_:.-".indexOf(c) != -1;
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendLiteral(List<Part> parts, StringBuilder literal) {
+        if (literal.length() > 0) {
+            if (parts.size() > 0 && parts.get(parts.size() - 1).literal != null) {
+                Part previous = parts.remove(parts.size() - 1);
+                parts.add(new Part(previous.literal + literal));
+            } else {
+                parts.add(new Part(literal.toString()));
+            }
+            literal.setLength(0);
+        }
+    }
+
+    private static boolean isBuiltin(String name, Map<String, String> patternBank, int depth) {
+        String definition = patternBank.get(name);
+        if (definition == null || depth > MAX_INLINE_DEPTH || !definition.equals(Grok.getBuiltinPatterns().get(name))) {
+            return false;
+        }
+        int i = definition.indexOf("%{");
+        while (i != -1) {
+            int end = i + 2;
+            while (end < definition.length() && definition.charAt(end) != '}' && definition.charAt(end) != ':') {
+                end++;
+            }
+            if (!isBuiltin(definition.substring(i + 2, end), patternBank, depth + 1)) {
+                return false;
+            }
+            i = definition.indexOf("%{", end);
+        }
+        return true;
+    }
+
+    static final class Part {
+
+        final String literal;
+        final String name;
+        final String fieldName;
+        final String type;
+
+        Part(String literal) {
+            this.literal = literal;
+            this.name = null;
+            this.fieldName = null;
+            this.type = null;
+        }
+
+        Part(String name, String fieldName, String type) {
+            this.literal = null;
+            this.name = name;
+            this.fieldName = fieldName;
+            this.type = type;
+        }
+    }
+}
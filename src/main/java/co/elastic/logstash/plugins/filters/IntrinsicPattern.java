@@ -0,0 +1,756 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// hand-written scanners for hot built-in patterns that give the same results as their regex on ASCII text
+class IntrinsicPattern implements PatternMatcher {
+
+    private static final int NO_MATCH = -1;
+    private static final int UNDECIDED_MATCH = -2;
+
+    private static final Map<String, Intrinsic> INTRINSICS = new HashMap<>();
+
+    static {
+        register(new IntIntrinsic());
+        register(new NumberIntrinsic());
+        register(new WordIntrinsic());
+        register(new NotSpaceIntrinsic());
+        register(new Ipv4Intrinsic("IPV4"));
+        register(new IpIntrinsic());
+        register(new LogLevelIntrinsic());
+        register(new HttpDateIntrinsic());
+        register(new TimestampIso8601Intrinsic());
+    }
+
+    private final Element[][] alternatives;
+    private final int maxTokens;
+
+    private IntrinsicPattern(Element[][] alternatives) {
+        this.alternatives = alternatives;
+        int max = 0;
+        for (Element[] alternative : alternatives) {
+            int tokens = 0;
+            for (Element element : alternative) {
+                if (element.intrinsic != null) {
+                    tokens++;
+                }
+            }
+            max = Math.max(max, tokens);
+        }
+        this.maxTokens = max;
+    }
+
+    static IntrinsicPattern compile(List<String> patterns, Map<String, String> patternBank) {
+        Element[][] alternatives = new Element[patterns.size()][];
+        for (int k = 0; k < patterns.size(); k++) {
+            List<GrokPatternParser.Part> parts = GrokPatternParser.parse(patterns.get(k), patternBank,
+                    name -> INTRINSICS.containsKey(name) && GrokPatternParser.isBuiltin(name, patternBank));
+            if (parts == null) {
+                return null;
+            }
+            List<Element> elements = new ArrayList<>();
+            for (GrokPatternParser.Part part : parts) {
+                elements.add(part.literal != null
+                        ? new Element(part.literal)
+                        : new Element(INTRINSICS.get(part.name), part.fieldName, part.type));
+            }
+            if (!isDeterministic(elements)) {
+                return null;
+            }
+            alternatives[k] = elements.toArray(new Element[0]);
+        }
+        return new IntrinsicPattern(alternatives);
+    }
+
+    @Override
+    public Map<String, Object> captures(String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return UNDECIDED;
+            }
+        }
+
+        int[] bounds = new int[maxTokens * 2];
+        String leadingLiteral = alternatives.length == 1 ? alternatives[0][0].literal : null;
+        for (int start = 0; start <= length; start++) {
+            if (leadingLiteral != null) {
+                start = text.indexOf(leadingLiteral, start);
+                if (start == -1) {
+                    return null;
+                }
+            }
+            for (Element[] alternative : alternatives) {
+                int end = matchAt(alternative, text, start, bounds);
+                if (end == UNDECIDED_MATCH) {
+                    return UNDECIDED;
+                } else if (end != NO_MATCH) {
+                    return toCaptures(alternative, text, bounds);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int matchAt(Element[] alternative, String text, int start, int[] bounds) {
+        int pos = start;
+        int t = 0;
+        for (Element element : alternative) {
+            if (element.literal != null) {
+                if (!text.startsWith(element.literal, pos)) {
+                    return NO_MATCH;
+                }
+                pos += element.literal.length();
+            } else {
+                int end = element.last ? element.intrinsic.matchAtEnd(text, pos) : element.intrinsic.match(text, pos);
+                if (end < 0) {
+                    return end;
+                }
+                bounds[t++] = pos;
+                bounds[t++] = end;
+                pos = end;
+            }
+        }
+        return pos;
+    }
+
+    private static Map<String, Object> toCaptures(Element[] alternative, String text, int[] bounds) {
+        Map<String, Object> captures = new HashMap<>();
+        int t = 0;
+        for (Element element : alternative) {
+            if (element.intrinsic != null) {
+                if (element.fieldName != null) {
+                    captures.put(element.fieldName, NumericCoercion.coerce(text.substring(bounds[t], bounds[t + 1]), element.type));
+                }
+                t += 2;
+            }
+        }
+        return captures;
+    }
+
+    private static boolean isDeterministic(List<Element> elements) {
+        if (elements.isEmpty()) {
+            return false;
+        }
+        for (int k = 0; k < elements.size(); k++) {
+            Element element = elements.get(k);
+            if (element.intrinsic == null) {
+                continue;
+            }
+            if (k == elements.size() - 1) {
+                element.last = true;
+                if (!element.intrinsic.allowedAtEnd()) {
+                    return false;
+                }
+            } else {
+                Element next = elements.get(k + 1);
+                if (next.literal == null || element.intrinsic.continues(next.literal.charAt(0))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void register(Intrinsic intrinsic) {
+        INTRINSICS.put(intrinsic.name, intrinsic);
+    }
+
+    private static class Element {
+
+        final String literal;
+        final Intrinsic intrinsic;
+        final String fieldName;
+        final String type;
+        boolean last;
+
+        Element(String literal) {
+            this.literal = literal;
+            this.intrinsic = null;
+            this.fieldName = null;
+            this.type = null;
+        }
+
+        Element(Intrinsic intrinsic, String fieldName, String type) {
+            this.literal = null;
+            this.intrinsic = intrinsic;
+            this.fieldName = fieldName;
+            this.type = type;
+        }
+    }
+
+    // match returns the end of the match when what follows is a char for which continues is false
+    abstract static class Intrinsic {
+
+        final String name;
+
+        Intrinsic(String name) {
+            this.name = name;
+        }
+
+        abstract int match(String s, int start);
+
+        int matchAtEnd(String s, int start) {
+            return match(s, start);
+        }
+
+        boolean continues(char c) {
+            return false;
+        }
+
+        boolean allowedAtEnd() {
+            return true;
+        }
+    }
+
+    // INT (?:[+-]?(?:[0-9]+))
+    static class IntIntrinsic extends Intrinsic {
+
+        IntIntrinsic() {
+            super("INT");
+        }
+
+        @Override
+        int match(String s, int start) {
+            return matchInt(s, start);
+        }
+
+        @Override
+        boolean continues(char c) {
+            return isDigit(c);
+        }
+    }
+
+    // NUMBER (?:%{BASE10NUM}), BASE10NUM (?<![0-9.+-])(?>[+-]?(?:(?:[0-9]+(?:\.[0-9]+)?)|(?:\.[0-9]+)))
+    static class NumberIntrinsic extends Intrinsic {
+
+        NumberIntrinsic() {
+            super("NUMBER");
+        }
+
+        @Override
+        int match(String s, int start) {
+            if (start > 0 && isNumberChar(s.charAt(start - 1))) {
+                return NO_MATCH;
+            }
+            int p = start;
+            char c = at(s, p);
+            if (c == '+' || c == '-') {
+                p++;
+            }
+            if (isDigit(at(s, p))) {
+                p = digitsEnd(s, p);
+                if (at(s, p) == '.' && isDigit(at(s, p + 1))) {
+                    p = digitsEnd(s, p + 1);
+                }
+                return p;
+            } else if (at(s, p) == '.' && isDigit(at(s, p + 1))) {
+                return digitsEnd(s, p + 1);
+            }
+            return NO_MATCH;
+        }
+
+        private static boolean isNumberChar(char c) {
+            return isDigit(c) || c == '.' || c == '+' || c == '-';
+        }
+    }
+
+    // WORD \b\w+\b
+    static class WordIntrinsic extends Intrinsic {
+
+        WordIntrinsic() {
+            super("WORD");
+        }
+
+        @Override
+        int match(String s, int start) {
+            if ((start > 0 && isWordChar(s.charAt(start - 1))) || !isWordChar(at(s, start))) {
+                return NO_MATCH;
+            }
+            int p = start + 1;
+            while (isWordChar(at(s, p))) {
+                p++;
+            }
+            return p;
+        }
+    }
+
+    // NOTSPACE \S+
+    static class NotSpaceIntrinsic extends Intrinsic {
+
+        NotSpaceIntrinsic() {
+            super("NOTSPACE");
+        }
+
+        @Override
+        int match(String s, int start) {
+            int p = start;
+            while (p < s.length() && !isSpace(s.charAt(p))) {
+                p++;
+            }
+            return p > start ? p : NO_MATCH;
+        }
+
+        @Override
+        boolean continues(char c) {
+            return !isSpace(c);
+        }
+    }
+
+    // IPV4 (?<![0-9])(?:octet[.]octet[.]octet[.]octet)(?![0-9])
+    static class Ipv4Intrinsic extends Intrinsic {
+
+        Ipv4Intrinsic(String name) {
+            super(name);
+        }
+
+        @Override
+        int match(String s, int start) {
+            if (start > 0 && isDigit(s.charAt(start - 1))) {
+                return NO_MATCH;
+            }
+            int p = start;
+            for (int octet = 0; octet < 4; octet++) {
+                if (octet > 0) {
+                    if (at(s, p) != '.') {
+                        return NO_MATCH;
+                    }
+                    p++;
+                }
+                int end = digitsEnd(s, p);
+                if (!isOctet(s, p, end)) {
+                    return NO_MATCH;
+                }
+                p = end;
+            }
+            return p;
+        }
+
+        // the digit run must be consumed completely since each octet is followed by '.' or (?![0-9])
+        private static boolean isOctet(String s, int start, int end) {
+            int length = end - start;
+            if (length == 0 || length > 3) {
+                return false;
+            } else if (length < 3) {
+                return true;
+            }
+            char c0 = s.charAt(start);
+            char c1 = s.charAt(start + 1);
+            char c2 = s.charAt(start + 2);
+            return c0 == '0' || c0 == '1' || (c0 == '2' && (c1 <= '4' || (c1 == '5' && c2 <= '5')));
+        }
+    }
+
+    // IP (?:%{IPV6}|%{IPV4}); every IPV6 alternative starts with ':' or 1-4 hex digits followed by ':'
+    static class IpIntrinsic extends Ipv4Intrinsic {
+
+        IpIntrinsic() {
+            super("IP");
+        }
+
+        @Override
+        int match(String s, int start) {
+            int p = start;
+            while (p - start < 5 && isHexDigit(at(s, p))) {
+                p++;
+            }
+            if (at(s, p) == ':' && p - start <= 4) {
+                return UNDECIDED_MATCH;
+            }
+            return super.match(s, start);
+        }
+    }
+
+    // LOGLEVEL ([Aa]lert|ALERT|[Tt]race|TRACE|...|EMERG(?:ENCY)?|[Ee]merg(?:ency)?)
+    static class LogLevelIntrinsic extends Intrinsic {
+
+        // expansions of each alternative in the order the regex tries them
+        private static final List<String> LEVELS = Arrays.asList(
+                "Alert", "alert", "ALERT", "Trace", "trace", "TRACE", "Debug", "debug", "DEBUG",
+                "Notice", "notice", "NOTICE", "Info", "info", "INFO",
+                "Warning", "Warn", "Waring", "War", "warning", "warn", "waring", "war",
+                "WARNING", "WARN", "WARING", "WAR",
+                "Error", "Err", "Eror", "Er", "error", "err", "eror", "er",
+                "ERROR", "ERR", "EROR", "ER",
+                "Critical", "Crit", "Crical", "Cri", "critical", "crit", "crical", "cri",
+                "CRITICAL", "CRIT", "CRICAL", "CRI",
+                "Fatal", "fatal", "FATAL", "Severe", "severe", "SEVERE",
+                "EMERGENCY", "EMERG", "Emergency", "Emerg", "emergency", "emerg");
+        private static final Set<String> LEVEL_SET = new HashSet<>(LEVELS);
+
+        LogLevelIntrinsic() {
+            super("LOGLEVEL");
+        }
+
+        @Override
+        int match(String s, int start) {
+            int p = start;
+            while (isLetter(at(s, p))) {
+                p++;
+            }
+            return p > start && LEVEL_SET.contains(s.substring(start, p)) ? p : NO_MATCH;
+        }
+
+        @Override
+        int matchAtEnd(String s, int start) {
+            for (String level : LEVELS) {
+                if (s.startsWith(level, start)) {
+                    return start + level.length();
+                }
+            }
+            return NO_MATCH;
+        }
+
+        @Override
+        boolean continues(char c) {
+            return isLetter(c);
+        }
+    }
+
+    // HTTPDATE %{MONTHDAY}/%{MONTH}/%{YEAR}:%{TIME} %{INT}
+    static class HttpDateIntrinsic extends Intrinsic {
+
+        private static final Set<String> MONTHS = new HashSet<>(Arrays.asList(
+                "Jan", "January", "Januar", "Feb", "February", "Februar",
+                "Mr", "Mrch", "Mrz", "Mar", "March", "Marz", "Apr", "April", "Ma", "May", "Mai",
+                "Jun", "June", "Juni", "Jul", "July", "Aug", "August", "Sep", "September",
+                "Ot", "Otober", "Oct", "October", "Okt", "Oktober", "Nov", "November",
+                "Dec", "December", "Dez", "Dezember"));
+
+        HttpDateIntrinsic() {
+            super("HTTPDATE");
+        }
+
+        @Override
+        int match(String s, int start) {
+            int p = matchMonthDay(s, start, '/');
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            // MONTH is enclosed in \b so the whole word must be a month name
+            int monthStart = p + 1;
+            p = monthStart;
+            while (isWordChar(at(s, p))) {
+                p++;
+            }
+            if (at(s, p) != '/' || !MONTHS.contains(s.substring(monthStart, p))) {
+                return NO_MATCH;
+            }
+            p = matchYear(s, p + 1, ':');
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            p = matchTime(s, p + 1);
+            if (p < 0 || at(s, p) != ' ') {
+                return NO_MATCH;
+            }
+            return matchInt(s, p + 1);
+        }
+
+        @Override
+        boolean continues(char c) {
+            return isDigit(c);
+        }
+
+        // TIME (?!<[0-9])%{HOUR}:%{MINUTE}(?::%{SECOND})(?![0-9]) followed by ' '
+        private static int matchTime(String s, int start) {
+            int end = digitsEnd(s, start);
+            int length = end - start;
+            if (at(s, end) != ':' || length == 0 || length > 2
+                    || (length == 2 && s.charAt(start) > '2') || (length == 2 && s.charAt(start) == '2' && s.charAt(start + 1) > '3')) {
+                return NO_MATCH;
+            }
+            int p = end + 1;
+            if (!isMinute(s, p) || at(s, p + 2) != ':') {
+                return NO_MATCH;
+            }
+            p += 3;
+            int secondEnd = p;
+            while (isDigit(at(s, secondEnd)) || isFractionSeparator(at(s, secondEnd))) {
+                secondEnd++;
+            }
+            return isSecond(s, p, secondEnd) ? secondEnd : NO_MATCH;
+        }
+
+        // SECOND (?:(?:[0-5]?[0-9]|60)(?:[:.,][0-9]+)?) covering exactly [start, end)
+        private static boolean isSecond(String s, int start, int end) {
+            for (int base = 1; base <= 2; base++) {
+                int b = start + base;
+                if (b > end || !isDigit(at(s, start + base - 1))) {
+                    break;
+                }
+                if (base == 2 && at(s, start) > '5' && !(at(s, start) == '6' && at(s, start + 1) == '0')) {
+                    break;
+                }
+                if (b == end || (isFractionSeparator(at(s, b)) && b + 1 < end && digitsEnd(s, b + 1) == end)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // TIMESTAMP_ISO8601 %{YEAR}-%{MONTHNUM}-%{MONTHDAY}[T ]%{ISO8601_HOUR}:?%{MINUTE}(?::?%{SECOND})?%{ISO8601_TIMEZONE}?
+    static class TimestampIso8601Intrinsic extends Intrinsic {
+
+        TimestampIso8601Intrinsic() {
+            super("TIMESTAMP_ISO8601");
+        }
+
+        @Override
+        int match(String s, int start) {
+            int p = matchThroughMinute(s, start);
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            // the follower cannot be part of the optional tail, so the tail must extend to the end of the run
+            int end = p;
+            while (continues(at(s, end))) {
+                end++;
+            }
+            return matchesTail(s, p, end) ? end : NO_MATCH;
+        }
+
+        @Override
+        int matchAtEnd(String s, int start) {
+            int p = matchThroughMinute(s, start);
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            int secondEnd = at(s, p) == ':' ? greedySecond(s, p + 1) : NO_MATCH;
+            if (secondEnd < 0) {
+                secondEnd = greedySecond(s, p);
+            }
+            if (secondEnd >= 0) {
+                p = secondEnd;
+            }
+            int timezoneEnd = greedyTimezone(s, p);
+            return timezoneEnd >= 0 ? timezoneEnd : p;
+        }
+
+        @Override
+        boolean continues(char c) {
+            return isDigit(c) || isFractionSeparator(c) || c == '+' || c == '-' || c == 'Z';
+        }
+
+        private static int matchThroughMinute(String s, int start) {
+            int p = matchYear(s, start, '-');
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            p = matchMonthNum(s, p + 1);
+            if (p < 0) {
+                return NO_MATCH;
+            }
+            int dayStart = p + 1;
+            p = matchMonthDay(s, dayStart, 'T');
+            if (p < 0) {
+                p = matchMonthDay(s, dayStart, ' ');
+                if (p < 0) {
+                    return NO_MATCH;
+                }
+            }
+            // ISO8601_HOUR (?:2[0123]|[01][0-9]) followed by :?%{MINUTE}
+            p++;
+            char c0 = at(s, p);
+            char c1 = at(s, p + 1);
+            if (!((c0 == '2' && c1 >= '0' && c1 <= '3') || ((c0 == '0' || c0 == '1') && isDigit(c1)))) {
+                return NO_MATCH;
+            }
+            p += 2;
+            if (at(s, p) == ':' && isMinute(s, p + 1)) {
+                return p + 3;
+            }
+            return isMinute(s, p) ? p + 2 : NO_MATCH;
+        }
+
+        private static int matchMonthNum(String s, int start) {
+            int end = digitsEnd(s, start);
+            if (at(s, end) != '-') {
+                return NO_MATCH;
+            }
+            int length = end - start;
+            char c0 = at(s, start);
+            char c1 = at(s, start + 1);
+            if ((length == 1 && c0 != '0') || (length == 2 && ((c0 == '0' && c1 != '0') || (c0 == '1' && c1 <= '2')))) {
+                return end;
+            }
+            return NO_MATCH;
+        }
+
+        private static boolean matchesTail(String s, int start, int end) {
+            if (matchesTimezone(s, start, end)) {
+                return true;
+            }
+            if (at(s, start) == ':' && matchesSecondThenTimezone(s, start + 1, end)) {
+                return true;
+            }
+            return matchesSecondThenTimezone(s, start, end);
+        }
+
+        private static boolean matchesSecondThenTimezone(String s, int start, int end) {
+            for (int base = 1; base <= 2; base++) {
+                int b = start + base;
+                if (b > end || !isDigit(at(s, start + base - 1))) {
+                    break;
+                }
+                if (base == 2 && at(s, start) > '5' && !(at(s, start) == '6' && at(s, start + 1) == '0')) {
+                    break;
+                }
+                if (matchesTimezone(s, b, end)) {
+                    return true;
+                }
+                if (isFractionSeparator(at(s, b))) {
+                    int fractionEnd = Math.min(digitsEnd(s, b + 1), end);
+                    for (int f = b + 2; f <= fractionEnd; f++) {
+                        if (matchesTimezone(s, f, end)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // ISO8601_TIMEZONE (?:Z|[+-]%{HOUR}(?::?%{MINUTE})) covering exactly [start, end), or empty
+        private static boolean matchesTimezone(String s, int start, int end) {
+            if (start == end) {
+                return true;
+            }
+            char c = at(s, start);
+            if (c == 'Z') {
+                return start + 1 == end;
+            } else if (c == '+' || c == '-') {
+                for (int hourEnd : hourEnds(s, start + 1)) {
+                    if (hourEnd > 0 && ((hourEnd + 2 == end && isMinute(s, hourEnd))
+                            || (at(s, hourEnd) == ':' && hourEnd + 3 == end && isMinute(s, hourEnd + 1)))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static int greedySecond(String s, int start) {
+            int p;
+            char c = at(s, start);
+            if (c >= '0' && c <= '5' && isDigit(at(s, start + 1))) {
+                p = start + 2;
+            } else if (isDigit(c)) {
+                p = start + 1;
+            } else {
+                return NO_MATCH;
+            }
+            if (isFractionSeparator(at(s, p)) && isDigit(at(s, p + 1))) {
+                p = digitsEnd(s, p + 1);
+            }
+            return p;
+        }
+
+        private static int greedyTimezone(String s, int start) {
+            char c = at(s, start);
+            if (c == 'Z') {
+                return start + 1;
+            } else if (c == '+' || c == '-') {
+                for (int hourEnd : hourEnds(s, start + 1)) {
+                    if (hourEnd > 0) {
+                        if (at(s, hourEnd) == ':' && isMinute(s, hourEnd + 1)) {
+                            return hourEnd + 3;
+                        } else if (isMinute(s, hourEnd)) {
+                            return hourEnd + 2;
+                        }
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+
+        // HOUR (?:2[0123]|[01]?[0-9]) in the order the alternatives are tried
+        private static int[] hourEnds(String s, int start) {
+            char c0 = at(s, start);
+            char c1 = at(s, start + 1);
+            return new int[]{
+                    c0 == '2' && c1 >= '0' && c1 <= '3' ? start + 2 : NO_MATCH,
+                    (c0 == '0' || c0 == '1') && isDigit(c1) ? start + 2 : NO_MATCH,
+                    isDigit(c0) ? start + 1 : NO_MATCH
+            };
+        }
+    }
+
+    private static int matchInt(String s, int start) {
+        int p = start;
+        char c = at(s, p);
+        if (c == '+' || c == '-') {
+            p++;
+        }
+        int end = digitsEnd(s, p);
+        return end > p ? end : NO_MATCH;
+    }
+
+    // MONTHDAY (?:(?:0[1-9])|(?:[12][0-9])|(?:3[01])|[1-9]) followed by the given separator
+    private static int matchMonthDay(String s, int start, char separator) {
+        char c0 = at(s, start);
+        char c1 = at(s, start + 1);
+        if (c1 == separator && c0 >= '1' && c0 <= '9') {
+            return start + 1;
+        } else if (at(s, start + 2) == separator && isDigit(c1)
+                && ((c0 == '0' && c1 != '0') || c0 == '1' || c0 == '2' || (c0 == '3' && c1 <= '1'))) {
+            return start + 2;
+        }
+        return NO_MATCH;
+    }
+
+    // YEAR (?>\d\d){1,2} followed by the given separator
+    private static int matchYear(String s, int start, char separator) {
+        int end = digitsEnd(s, start);
+        return (end - start == 2 || end - start == 4) && at(s, end) == separator ? end : NO_MATCH;
+    }
+
+    // MINUTE (?:[0-5][0-9])
+    private static boolean isMinute(String s, int start) {
+        char c = at(s, start);
+        return c >= '0' && c <= '5' && isDigit(at(s, start + 1));
+    }
+
+    private static int digitsEnd(String s, int start) {
+        int p = start;
+        while (isDigit(at(s, p))) {
+            p++;
+        }
+        return p;
+    }
+
+    private static char at(String s, int index) {
+        return index < s.length() ? s.charAt(index) : 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    private static boolean isFractionSeparator(char c) {
+        return c == ':' || c == '.' || c == ',';
+    }
+}
@@ -10,10 +10,14 @@ import co.elastic.logstash.api.PluginConfigSpec;
 import co.elastic.logstash.api.PluginHelper;
 import org.elasticsearch.grok.Grok;
 import org.elasticsearch.grok.ThreadWatchdog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -21,19 +25,20 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
 
 @LogstashPlugin(name = "jgrok")
 public class Jgrok implements Filter {
@@ -48,6 +53,8 @@ public class Jgrok implements Filter {
             PluginConfigSpec.stringSetting("tag_on_timeout", "_groktimeout");
     public static final PluginConfigSpec<String> TAG_ON_FAILURE =
             PluginConfigSpec.stringSetting("tag_on_failure", "_grokparsefailure");
+    public static final PluginConfigSpec<String> TAG_ON_DATE_FAILURE =
+            PluginConfigSpec.stringSetting("tag_on_date_failure", "_grokdateparsefailure");
     public static final PluginConfigSpec<Boolean> NAMED_CAPTURES_ONLY =
             PluginConfigSpec.booleanSetting("named_captures_only", true);
     public static final PluginConfigSpec<List<Object>> OVERWRITE =
@@ -58,21 +65,175 @@ public class Jgrok implements Filter {
             PluginConfigSpec.arraySetting("patterns_dir", Collections.emptyList(), false, false);
     public static final PluginConfigSpec<String> PATTERNS_FILES_GLOB =
             PluginConfigSpec.stringSetting("patterns_files_glob", "*");
+    public static final PluginConfigSpec<Boolean> INTRINSIC_MATCHERS =
+            PluginConfigSpec.booleanSetting("intrinsic_matchers", true);
+    public static final PluginConfigSpec<Boolean> DISSECT_TOKENIZER =
+            PluginConfigSpec.booleanSetting("dissect_tokenizer", true);
+    public static final PluginConfigSpec<Boolean> MERGE_PREFIXES =
+            PluginConfigSpec.booleanSetting("merge_prefixes", false);
+    public static final PluginConfigSpec<List<Object>> WARMUP_SAMPLES =
+            PluginConfigSpec.arraySetting("warmup_samples", Collections.emptyList(), false, false);
+    public static final PluginConfigSpec<String> WARMUP_SAMPLES_FILE =
+            PluginConfigSpec.stringSetting("warmup_samples_file");
+    public static final PluginConfigSpec<Long> WARMUP_ITERATIONS =
+            PluginConfigSpec.numSetting("warmup_iterations", 1000);
+    public static final PluginConfigSpec<Long> PROFILE_SAMPLE_RATE =
+            PluginConfigSpec.numSetting("profile_sample_rate", 0);
+    public static final PluginConfigSpec<String> PROFILE_TARGET =
+            PluginConfigSpec.stringSetting("profile_target");
+    public static final PluginConfigSpec<List<Object>> MATCH_ONLY =
+            PluginConfigSpec.arraySetting("match_only", Collections.emptyList(), false, false);
+    public static final PluginConfigSpec<String> TAG_ON_MATCH =
+            PluginConfigSpec.stringSetting("tag_on_match", "");
+    public static final PluginConfigSpec<String> MATCH_FLAG =
+            PluginConfigSpec.stringSetting("match_flag");
+    public static final PluginConfigSpec<List<Object>> INTERN_CAPTURES =
+            PluginConfigSpec.arraySetting("intern_captures", Collections.emptyList(), false, false);
+    public static final PluginConfigSpec<Boolean> BATCH_MATCHING =
+            PluginConfigSpec.booleanSetting("batch_matching", false);
+    public static final PluginConfigSpec<Long> COVERAGE_REPORT_INTERVAL =
+            PluginConfigSpec.numSetting("coverage_report_interval", 0);
+    public static final PluginConfigSpec<Long> COVERAGE_SAMPLE_RATE =
+            PluginConfigSpec.numSetting("coverage_sample_rate", 100);
+    public static final PluginConfigSpec<Long> SLOWEST_INPUTS =
+            PluginConfigSpec.numSetting("slowest_inputs", 0);
+    public static final PluginConfigSpec<Long> SLOWEST_INPUTS_MAX_LENGTH =
+            PluginConfigSpec.numSetting("slowest_inputs_max_length", 4096);
+    public static final PluginConfigSpec<String> SLOWEST_INPUTS_FILE =
+            PluginConfigSpec.stringSetting("slowest_inputs_file");
+    public static final PluginConfigSpec<Long> SLOWEST_INPUTS_DUMP_INTERVAL =
+            PluginConfigSpec.numSetting("slowest_inputs_dump_interval", 0);
+    public static final PluginConfigSpec<String> ENTRY_ORDER =
+            PluginConfigSpec.stringSetting("entry_order", "declared");
+    public static final PluginConfigSpec<Long> ENTRY_ORDER_INTERVAL =
+            PluginConfigSpec.numSetting("entry_order_interval", 10);
+    public static final PluginConfigSpec<Long> OVERLOAD_LATENCY_MICROS =
+            PluginConfigSpec.numSetting("overload_latency_micros", 0);
+    public static final PluginConfigSpec<Long> OVERLOAD_WINDOW =
+            PluginConfigSpec.numSetting("overload_window", 1);
+    public static final PluginConfigSpec<Long> OVERLOAD_RECOVERY =
+            PluginConfigSpec.numSetting("overload_recovery", 30);
+    public static final PluginConfigSpec<List<Object>> ESSENTIAL_ENTRIES =
+            PluginConfigSpec.arraySetting("essential_entries", Collections.emptyList(), false, false);
+    public static final PluginConfigSpec<String> TAG_ON_SHED =
+            PluginConfigSpec.stringSetting("tag_on_shed", "_grokshed");
+    public static final PluginConfigSpec<Boolean> RAW_SOURCE_BYTES =
+            PluginConfigSpec.booleanSetting("raw_source_bytes", true);
+    public static final PluginConfigSpec<String> MATCH_BY =
+            PluginConfigSpec.stringSetting("match_by");
+    public static final PluginConfigSpec<Map<String, Object>> ROUTES =
+            PluginConfigSpec.hashSetting("routes", Collections.emptyMap(), false, false);
+    public static final PluginConfigSpec<Long> MEMORY_BUDGET_MB =
+            PluginConfigSpec.numSetting("memory_budget_mb", 0);
+
+    private static final Logger logger = LogManager.getLogger(Jgrok.class);
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([A-Za-z0-9_@\\[\\]:.\\-]+)>");
+    private static final Logger profileLogger = LogManager.getLogger(Jgrok.class.getName() + ".profile");
+    private static final Logger coverageLogger = LogManager.getLogger(Jgrok.class.getName() + ".coverage");
 
     private final String id;
     private final boolean breakOnMatch;
     private final boolean namedCapturesOnly;
     private final String tagOnTimeout;
     private final String tagOnFailure;
+    private final String tagOnDateFailure;
     private final List<String> overwrite;
+    private final String tagOnMatch;
+    private final String matchFlag;
     private final GrokMatchEntry[] grokMatchEntries;
+    private final List<String> unmatchedWarmupSamples = new ArrayList<>();
+    private final long profileSampleRate;
+    private final String profileTarget;
+    private final AtomicLong profileCounter = new AtomicLong();
+    private final long coverageReportIntervalNanos;
+    private final boolean batchMatching;
+    private final String slowestInputsFile;
+    private final long slowestInputsDumpIntervalNanos;
+    private final AtomicLong nextSlowestInputsDump;
+    private final ThreadLocal<MatchBatch> matchBatches = ThreadLocal.withInitial(MatchBatch::new);
+    private final AtomicLong nextCoverageReport;
+    private final int[] declaredOrder;
+    private final EntryPlanner planner;
+    private final long entryOrderIntervalNanos;
+    private final AtomicLong nextEntryPlan;
+    private final String tagOnShed;
+    private final boolean[] essential;
+    private final LoadShedder shedder;
+    private final boolean rawSourceBytes;
+    private final String matchBy;
+    private final Route defaultRoute;
+    private final Map<String, Route> routes = new HashMap<>();
+    private final long patternBankBytes;
+    private final Map<String, Long> entryBytes = new LinkedHashMap<>();
+    // set while the constructor runs the warm-up samples through filter()
+    private boolean warmingUp;
 
     public Jgrok(String id, Configuration config, Context context) {
+        this(id, config, context, System::nanoTime);
+    }
+
+    // the clock only drives the load shedder
+    Jgrok(String id, Configuration config, Context context, LongSupplier clock) {
         this.id = id;
         this.breakOnMatch = config.get(BREAK_ON_MATCH);
         this.namedCapturesOnly = config.get(NAMED_CAPTURES_ONLY);
         this.tagOnTimeout = config.get(TAG_ON_TIMEOUT);
         this.tagOnFailure = config.get(TAG_ON_FAILURE);
+        this.tagOnDateFailure = config.get(TAG_ON_DATE_FAILURE);
+        this.profileSampleRate = config.get(PROFILE_SAMPLE_RATE);
+        this.profileTarget = config.get(PROFILE_TARGET);
+        this.tagOnMatch = config.get(TAG_ON_MATCH);
+        this.matchFlag = config.get(MATCH_FLAG);
+        this.coverageReportIntervalNanos = TimeUnit.SECONDS.toNanos(config.get(COVERAGE_REPORT_INTERVAL));
+        this.nextCoverageReport = new AtomicLong(System.nanoTime() + coverageReportIntervalNanos);
+        long coverageSampleRate = config.get(COVERAGE_SAMPLE_RATE);
+        this.batchMatching = config.get(BATCH_MATCHING);
+        long slowestInputs = config.get(SLOWEST_INPUTS);
+        int slowestInputsMaxLength = config.get(SLOWEST_INPUTS_MAX_LENGTH).intValue();
+        this.slowestInputsFile = config.get(SLOWEST_INPUTS_FILE);
+        this.slowestInputsDumpIntervalNanos = TimeUnit.SECONDS.toNanos(config.get(SLOWEST_INPUTS_DUMP_INTERVAL));
+        this.nextSlowestInputsDump = new AtomicLong(System.nanoTime() + slowestInputsDumpIntervalNanos);
+        if (slowestInputsDumpIntervalNanos > 0 && (slowestInputs <= 0 || slowestInputsFile == null)) {
+            throw new IllegalArgumentException("Dumping the slowest inputs periodically requires both '" +
+                    SLOWEST_INPUTS.name() + "' and '" + SLOWEST_INPUTS_FILE.name() + "' to be set");
+        }
+        String entryOrder = config.get(ENTRY_ORDER);
+        if (!entryOrder.equals("declared") && !entryOrder.equals("cost")) {
+            throw new IllegalArgumentException("Entry order '" + entryOrder + "' must be 'declared' or 'cost'");
+        }
+        this.entryOrderIntervalNanos = TimeUnit.SECONDS.toNanos(config.get(ENTRY_ORDER_INTERVAL));
+        if (entryOrder.equals("cost") && entryOrderIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Entry order interval must be positive");
+        }
+        this.nextEntryPlan = new AtomicLong(System.nanoTime() + entryOrderIntervalNanos);
+        this.tagOnShed = config.get(TAG_ON_SHED);
+        this.rawSourceBytes = config.get(RAW_SOURCE_BYTES);
+        this.matchBy = config.get(MATCH_BY);
+        // the entries of match come first and are used for events without a route of their own
+        List<String> routeValues = new ArrayList<>();
+        List<Map<String, Object>> routeMatches = new ArrayList<>();
+        routeValues.add(null);
+        routeMatches.add(config.get(MATCH));
+        Map<String, Object> routesConfig = config.get(ROUTES);
+        if ((matchBy == null) != routesConfig.isEmpty()) {
+            throw new IllegalArgumentException("'" + MATCH_BY.name() + "' and '" + ROUTES.name() + "' must be set together");
+        }
+        for (Map.Entry<String, Object> route : routesConfig.entrySet()) {
+            if (!(route.getValue() instanceof Map)) {
+                throw new IllegalArgumentException("Route for value '" + route.getKey() + "' must be a hash of source fields to patterns");
+            }
+            Map<String, Object> routeMatch = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) route.getValue()).entrySet()) {
+                routeMatch.put(entry.getKey().toString(), entry.getValue());
+            }
+            routeValues.add(route.getKey());
+            routeMatches.add(routeMatch);
+        }
+        long overloadLatencyMicros = config.get(OVERLOAD_LATENCY_MICROS);
+        long overloadWindowNanos = TimeUnit.SECONDS.toNanos(config.get(OVERLOAD_WINDOW));
+        if (overloadLatencyMicros > 0 && overloadWindowNanos <= 0) {
+            throw new IllegalArgumentException("Overload window must be positive");
+        }
 
         overwrite = new ArrayList<>();
         List<Object> overwriteConfig = config.get(OVERWRITE);
@@ -84,119 +245,863 @@ public class Jgrok implements Filter {
             }
         }
 
-        Map<String, String> patternBank = new HashMap<>();
-        patternBank.putAll(Grok.getBuiltinPatterns());
-        patternBank.putAll(readPatternsFromDirs(config.get(PATTERNS_DIR), config.get(PATTERNS_FILES_GLOB)));
-        patternBank.putAll(readPatternsFromConfig(config.get(PATTERN_DEFINITIONS)));
+        List<String> matchOnly = new ArrayList<>();
+        for (Object o : config.get(MATCH_ONLY)) {
+            if (o instanceof String) {
+                matchOnly.add((String) o);
+            } else {
+                throw new IllegalArgumentException("Match-only field name '" + o + "' must be a string type");
+            }
+        }
+
+        // shared by all entries that capture into the same field
+        Map<String, CaptureInterner> interners = new HashMap<>();
+        for (Object o : config.get(INTERN_CAPTURES)) {
+            if (o instanceof String) {
+                interners.put((String) o, new CaptureInterner());
+            } else {
+                throw new IllegalArgumentException("Interned capture field name '" + o + "' must be a string type");
+            }
+        }
 
+        List<String> essentialEntries = new ArrayList<>();
+        for (Object o : config.get(ESSENTIAL_ENTRIES)) {
+            if (o instanceof String && routeMatches.stream().anyMatch(routeMatch -> routeMatch.containsKey(o))) {
+                essentialEntries.add((String) o);
+            } else {
+                throw new IllegalArgumentException("Essential entry '" + o + "' must be the source field of a match entry");
+            }
+        }
+
+        Map<String, String> patternBank = loadPatternBank(config);
+
+        boolean intrinsicMatchers = config.get(INTRINSIC_MATCHERS) && namedCapturesOnly;
+        boolean dissectTokenizer = config.get(DISSECT_TOKENIZER) && namedCapturesOnly;
+        boolean mergePrefixes = config.get(MERGE_PREFIXES);
         long maxExecTimeMillis = config.get(TIMEOUT_MILLIS);
-        Map<String, Object> matchConfig = config.get(MATCH);
-        grokMatchEntries = new GrokMatchEntry[matchConfig.size()];
+        // shared by the entries of all routes
+        ThreadWatchdog threadWatchdog = DeadlineWatchdog.newInstance(maxExecTimeMillis / 2, maxExecTimeMillis);
+        long memoryBudgetBytes = config.get(MEMORY_BUDGET_MB) * 1024 * 1024;
+        List<Object> shared = new ArrayList<>(interners.values());
+        shared.add(threadWatchdog);
+        shared.add(this);
+        RetainedSize retainedSize = new RetainedSize(shared);
+        patternBankBytes = retainedSize.add(patternBank);
+        Map<String, String> entryPatterns = new HashMap<>();
+        grokMatchEntries = new GrokMatchEntry[routeMatches.stream().mapToInt(Map::size).sum()];
+        declaredOrder = new int[grokMatchEntries.length];
+        for (int d = 0; d < declaredOrder.length; d++) {
+            declaredOrder[d] = d;
+        }
+        // without break_on_match every entry is evaluated anyway, so entries are only reordered with it
+        planner = entryOrder.equals("cost") && breakOnMatch ? new EntryPlanner(grokMatchEntries.length) : null;
+        essential = new boolean[grokMatchEntries.length];
+        shedder = overloadLatencyMicros > 0
+                ? new LoadShedder(TimeUnit.MICROSECONDS.toNanos(overloadLatencyMicros), overloadWindowNanos,
+                        TimeUnit.SECONDS.toNanos(config.get(OVERLOAD_RECOVERY)), essentialEntries.size() > 0,
+                        clock)
+                : null;
         int k = 0;
-        for (Map.Entry<String, Object> entry : matchConfig.entrySet()) {
-            List<String> patterns = new ArrayList<>();
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                patterns.add((String) value);
-            } else if (value instanceof List) {
-                List patternDefsList = (List) value;
-                for (Object p : patternDefsList) {
-                    if (p instanceof String) {
-                        patterns.add((String) p);
-                    } else {
-                        throw new IllegalArgumentException("Match pattern list for field '" + entry.getKey() + "' must contain only string values");
+        List<Route> routeList = new ArrayList<>();
+        for (int r = 0; r < routeValues.size(); r++) {
+            String routeValue = routeValues.get(r);
+            int[] routeEntries = new int[routeMatches.get(r).size()];
+            Route route = new Route(routeEntries);
+            routeList.add(route);
+            int m = 0;
+            for (Map.Entry<String, Object> entry : routeMatches.get(r).entrySet()) {
+                String label = routeValue == null ? entry.getKey() : routeValue + ":" + entry.getKey();
+                routeEntries[m++] = k;
+                List<String> patterns = new ArrayList<>();
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    patterns.add((String) value);
+                } else if (value instanceof List) {
+                    List patternDefsList = (List) value;
+                    for (Object p : patternDefsList) {
+                        if (p instanceof String) {
+                            patterns.add((String) p);
+                        } else {
+                            throw new IllegalArgumentException("Match pattern list for field '" + entry.getKey() + "' must contain only string values");
+                        }
                     }
+                } else {
+                    throw new IllegalArgumentException("Match pattern for field '" + entry.getKey() + "' must be a string or list value");
                 }
-            } else {
-                throw new IllegalArgumentException("Match pattern for field '" + entry.getKey() + "' must be a string or list value");
-            }
 
-            try {
-                Constructor<Grok> constructor = Grok.class.getDeclaredConstructor(Map.class, String.class, boolean.class, ThreadWatchdog.class);
-                constructor.setAccessible(true);
-                Grok grok = constructor.newInstance(patternBank, combinePatterns(patterns), namedCapturesOnly, createGrokThreadWatchdog(maxExecTimeMillis / 2, maxExecTimeMillis));
-                grokMatchEntries[k] = new GrokMatchEntry(entry.getKey(), grok);
-            } catch (Exception ex) {
-                throw new IllegalStateException("Unable to initialize grok entry", ex);
+                try {
+                    Constructor<Grok> constructor = Grok.class.getDeclaredConstructor(Map.class, String.class, boolean.class, ThreadWatchdog.class);
+                    constructor.setAccessible(true);
+                    Grok grok = constructor.newInstance(patternBank, combinePatterns(patterns), namedCapturesOnly, threadWatchdog);
+                    String regex = grok.toRegex(combinePatterns(patterns));
+                    List<String> captureFields = captureFields(regex);
+                    Map<String, CaptureInterner> entryInterners = new HashMap<>();
+                    for (String field : captureFields) {
+                        if (interners.containsKey(field)) {
+                            entryInterners.put(field, interners.get(field));
+                        }
+                    }
+                    // matched on joni directly, with the regex the grok constructor compiled, to capture byte ranges
+                    CompiledGrok expression = CompiledGrok.of(grok, threadWatchdog, entryInterners);
+                    PrefixTrie trie = mergePrefixes ? PrefixTrie.compile(patterns, grok, threadWatchdog, expression) : null;
+                    CompiledGrok compiled = trie == null && !matchOnly.contains(entry.getKey()) ? expression : null;
+                    // match-only entries never extract captures, so they skip the capturing fast paths
+                    CompiledGrok matchOnlyGrok = matchOnly.contains(entry.getKey()) ? expression : null;
+                    PatternMatcher matcher = dissectTokenizer && matchOnlyGrok == null ? DissectPattern.compile(patterns, patternBank) : null;
+                    if (matcher == null && intrinsicMatchers && matchOnlyGrok == null) {
+                        matcher = IntrinsicPattern.compile(patterns, patternBank);
+                    }
+                    Alternatives alternatives = profileSampleRate > 0 || coverageReportIntervalNanos > 0
+                            ? Alternatives.compile(patterns, grok, threadWatchdog)
+                            : null;
+                    Coverage coverage = coverageReportIntervalNanos > 0
+                            ? new Coverage(label, alternatives, coverageSampleRate)
+                            : null;
+                    SlowestInputs slowest = slowestInputs > 0
+                            ? new SlowestInputs(label, (int) slowestInputs, slowestInputsMaxLength)
+                            : null;
+                    // without essential entries every entry is classified when only classifying
+                    essential[k] = essentialEntries.isEmpty() || essentialEntries.contains(entry.getKey());
+                    grokMatchEntries[k] = new GrokMatchEntry(entry.getKey(), label, route, grok, trie, matcher, alternatives,
+                            matchOnlyGrok, compiled, entryInterners, coverage, slowest, captureFields,
+                            dateFields(regex));
+                } catch (Exception ex) {
+                    throw new IllegalStateException("Unable to initialize grok entry", ex);
+                }
+                // checked after every entry so that a configuration over budget fails before it exhausts the heap
+                entryBytes.put(label, retainedSize.add(grokMatchEntries[k]));
+                entryPatterns.put(label, combinePatterns(patterns));
+                if (memoryBudgetBytes > 0 && getRetainedBytes() > memoryBudgetBytes) {
+                    throw new IllegalArgumentException("Grok filter '" + id + "' exceeds its memory budget of " +
+                            config.get(MEMORY_BUDGET_MB) + " MB after " + (k + 1) + " of " + grokMatchEntries.length +
+                            " match entries with an estimated " + memoryReport(entryPatterns));
+                }
+                k++;
             }
-            k++;
+            if (routeValue != null) {
+                routes.put(routeValue, route);
+            }
+        }
+        defaultRoute = routeList.get(0);
+        logger.info("Grok filter '{}' retains an estimated {}", id, memoryReport(entryPatterns));
+
+        List<String> warmupSamples = readWarmupSamples(config.get(WARMUP_SAMPLES), config.get(WARMUP_SAMPLES_FILE));
+        if (warmupSamples.size() > 0) {
+            warmUp(warmupSamples, config.get(WARMUP_ITERATIONS));
         }
     }
 
     @Override
     public Collection<Event> filter(Collection<Event> collection, FilterMatchListener filterMatchListener) {
+        long filterStart = shedder != null ? shedder.nanoTime() : 0;
+        int level = shedder != null ? shedder.level() : LoadShedder.FULL;
+        if (level != LoadShedder.FULL) {
+            filterShedding(collection, level, filterMatchListener);
+        } else if (batchMatching && collection.size() > 1) {
+            filterBatch(collection.toArray(new Event[0]), filterMatchListener);
+        } else {
+            boolean[] listMatched = new boolean[1];
+            RawStrings raw = new RawStrings();
+            for (Event e : collection) {
+                int[] order = route(e).order;
+                boolean matched = false;
+                GrokResult result = null;
+                for (int k = 0; k < order.length && (!breakOnMatch || !matched); k++) {
+                    GrokMatchEntry grok = grokMatchEntries[order[k]];
+                    long start = planner != null ? System.nanoTime() : 0;
+                    Object source = grok.rawBytes && raw.read(e, grok.sourceField) ? raw : e.getField(grok.sourceField);
+                    boolean entryMatched = false;
+                    if (source instanceof String || source == raw) {
+                        result = source == raw ? match(grok, raw, new GrokResult()) : grok(grok, (String) source);
+                        if (result.timedOut) {
+                            e.tag(tagOnTimeout);
+                        } else if (result.matched) {
+                            markMatched(e);
+                            entryMatched = true;
+                        } else if (result.captures != null && result.captures.size() > 0) {
+                            setCaptures(grok, e, result.captures);
+                            entryMatched = true;
+                        }
+                    } else if (source instanceof List) {
+                        GrokResult listResult = grokList(grok, e, (List) source, listMatched);
+                        result = listResult != null ? listResult : result;
+                        entryMatched = listMatched[0];
+                    } else {
+                        continue;
+                    }
+                    if (planner != null) {
+                        planner.record(order[k], System.nanoTime() - start, entryMatched);
+                    }
+                    matched |= entryMatched;
+                }
+                completeEvent(e, matched, result != null && !result.timedOut, filterMatchListener);
+            }
+        }
+        // warm-up batches run on cold code and would start the filter shedding
+        if (shedder != null && !warmingUp) {
+            shedder.record(shedder.nanoTime() - filterStart, collection.size());
+        }
+        if (coverageReportIntervalNanos > 0) {
+            long next = nextCoverageReport.get();
+            long now = System.nanoTime();
+            // only the worker that advances the deadline writes the report
+            if (now - next >= 0 && nextCoverageReport.compareAndSet(next, now + coverageReportIntervalNanos)) {
+                coverageLogger.info(coverageReport());
+            }
+        }
+        if (slowestInputsDumpIntervalNanos > 0) {
+            long next = nextSlowestInputsDump.get();
+            long now = System.nanoTime();
+            if (now - next >= 0 && nextSlowestInputsDump.compareAndSet(next, now + slowestInputsDumpIntervalNanos)) {
+                try {
+                    dumpSlowestInputs(Paths.get(slowestInputsFile));
+                } catch (IOException ex) {
+                    logger.warn("Could not write the slowest inputs of grok filter '" + id + "' to '" +
+                            slowestInputsFile + "'", ex);
+                }
+            }
+        }
+        if (planner != null) {
+            long next = nextEntryPlan.get();
+            long now = System.nanoTime();
+            if (now - next >= 0 && nextEntryPlan.compareAndSet(next, now + entryOrderIntervalNanos)) {
+                planEntryOrder();
+            }
+        }
+        return collection;
+    }
+
+    // matches one entry at a time across the batch, which gives the same results as filter
+    private void filterBatch(Event[] events, FilterMatchListener filterMatchListener) {
+        boolean[] matched = new boolean[events.length];
+        // whether the last value matched for the event completed without timing out
+        boolean[] evaluated = new boolean[events.length];
+        boolean[] listMatched = new boolean[1];
+        RawStrings raw = new RawStrings();
+        MatchBatch batch = matchBatches.get();
+        Route[] eventRoutes = new Route[events.length];
+        for (int i = 0; i < events.length; i++) {
+            eventRoutes[i] = route(events[i]);
+        }
+        // the routes have no entries in common, so only the order of the entries within each route matters
+        for (int index : planner != null ? planner.order() : declaredOrder) {
+            GrokMatchEntry grok = grokMatchEntries[index];
+            boolean batched = grok.batchable;
+            batch.clear();
+            for (int i = 0; i < events.length; i++) {
+                if (breakOnMatch && matched[i] || eventRoutes[i] != grok.route) {
+                    continue;
+                }
+                Event e = events[i];
+                if (batched && grok.rawBytes && raw.read(e, grok.sourceField)) {
+                    batch.add(i, raw.bytes, raw.start, raw.end);
+                    continue;
+                }
+                Object source = e.getField(grok.sourceField);
+                if (source instanceof String && batched) {
+                    batch.add(i, (String) source);
+                    continue;
+                }
+                long start = planner != null ? System.nanoTime() : 0;
+                boolean entryMatched = false;
+                if (source instanceof String) {
+                    GrokResult result = grok(grok, (String) source);
+                    evaluated[i] = !result.timedOut;
+                    if (result.timedOut) {
+                        e.tag(tagOnTimeout);
+                    } else if (result.matched) {
+                        markMatched(e);
+                        entryMatched = true;
+                    } else if (result.captures != null && result.captures.size() > 0) {
+                        setCaptures(grok, e, result.captures);
+                        entryMatched = true;
+                    }
+                } else if (source instanceof List) {
+                    GrokResult listResult = grokList(grok, e, (List) source, listMatched);
+                    evaluated[i] = listResult != null ? !listResult.timedOut : evaluated[i];
+                    entryMatched = listMatched[0];
+                } else {
+                    continue;
+                }
+                if (planner != null) {
+                    planner.record(index, System.nanoTime() - start, entryMatched);
+                }
+                matched[i] |= entryMatched;
+            }
+            for (int b = 0; b < batch.size; b++) {
+                Event e = events[batch.events[b]];
+                batch.captures.clear();
+                long start = planner != null ? System.nanoTime() : 0;
+                boolean found;
+                try {
+                    found = grok.compiled.captures(batch.values[b], batch.starts[b], batch.ends[b], batch.captures);
+                } catch (RuntimeException ex) {
+                    if (!isTimeout(ex)) {
+                        throw ex;
+                    }
+                    e.tag(tagOnTimeout);
+                    evaluated[batch.events[b]] = false;
+                    if (planner != null) {
+                        planner.record(index, System.nanoTime() - start, false);
+                    }
+                    continue;
+                }
+                evaluated[batch.events[b]] = true;
+                boolean entryMatched = found && batch.captures.size() > 0;
+                if (planner != null) {
+                    planner.record(index, System.nanoTime() - start, entryMatched);
+                }
+                if (entryMatched) {
+                    setCaptures(grok, e, batch.captures);
+                    matched[batch.events[b]] = true;
+                }
+            }
+        }
+        batch.trim();
+        for (int i = 0; i < events.length; i++) {
+            completeEvent(events[i], matched[i], evaluated[i], filterMatchListener);
+        }
+    }
+
+    // only the essential entries are evaluated, and at the match-only level only classified
+    private void filterShedding(Collection<Event> collection, int level, FilterMatchListener filterMatchListener) {
+        GrokResult result = new GrokResult();
+        boolean[] listMatched = new boolean[1];
         for (Event e : collection) {
+            int[] order = route(e).order;
             boolean matched = false;
-            GrokResult result = null;
-            for (int k = 0; k < grokMatchEntries.length && (!breakOnMatch || !matched); k++) {
-                GrokMatchEntry grok = grokMatchEntries[k];
+            // whether an entry that would have been evaluated at the full level was skipped
+            boolean skipped = false;
+            boolean evaluated = false;
+            for (int k = 0; k < order.length && (!breakOnMatch || !matched); k++) {
+                if (!essential[order[k]]) {
+                    skipped = true;
+                    continue;
+                }
+                GrokMatchEntry grok = grokMatchEntries[order[k]];
                 Object source = e.getField(grok.sourceField);
-                if (source instanceof String) {
-                    result = grok(grok.grok, (String) source);
+                if (source instanceof String && level == LoadShedder.MATCH_ONLY) {
+                    if (classify(grok, (String) source, result).timedOut) {
+                        e.tag(tagOnTimeout);
+                    } else if (result.matched) {
+                        markMatched(e);
+                        matched = true;
+                    }
+                    evaluated = !result.timedOut;
+                } else if (source instanceof String) {
+                    grok(grok, (String) source, result);
                     if (result.timedOut) {
                         e.tag(tagOnTimeout);
+                    } else if (result.matched) {
+                        markMatched(e);
+                        matched = true;
                     } else if (result.captures != null && result.captures.size() > 0) {
-                        for (Map.Entry<String, Object> entry : result.captures.entrySet()) {
-                            final String targetField = entry.getKey();
-                            if (e.getField(targetField) == null || overwrite.contains(targetField)) {
-                                e.setField(targetField, entry.getValue());
-                            }
-                        }
+                        setCaptures(grok, e, result.captures);
                         matched = true;
                     }
-                } else if (source instanceof List) {
-                    List sourceList = (List) source;
-                    Map<String, List<Object>> values = new HashMap<>();
-                    for (Object item : sourceList) {
-                        if (item instanceof String) {
-                            result = grok(grok.grok, (String) item);
-                            if (result.timedOut) {
+                    evaluated = !result.timedOut;
+                } else if (source instanceof List && level == LoadShedder.MATCH_ONLY) {
+                    boolean matchedItem = false;
+                    for (Object item : (List) source) {
+                        if (item instanceof String && !matchedItem) {
+                            if (classify(grok, (String) item, result).timedOut) {
                                 e.tag(tagOnTimeout);
-                            } else if (result.captures != null && result.captures.size() > 0) {
-                                for (Map.Entry<String, Object> entry : result.captures.entrySet()) {
-                                    appendValue(values, entry.getKey(), entry.getValue());
-                                }
-                                matched = true;
                             }
+                            matchedItem = result.matched;
+                            evaluated = !result.timedOut;
                         }
                     }
-                    for (Map.Entry<String, List<Object>> entry : values.entrySet()) {
-                        final String targetField = entry.getKey();
-                        if (e.getField(targetField) == null || overwrite.contains(targetField)) {
-                            e.setField(targetField, entry.getValue());
-                        }
+                    if (matchedItem) {
+                        markMatched(e);
+                        matched = true;
                     }
+                } else if (source instanceof List) {
+                    GrokResult listResult = grokList(grok, e, (List) source, listMatched);
+                    matched |= listMatched[0];
+                    evaluated = listResult != null ? !listResult.timedOut : evaluated;
                 }
             }
+            // an event that lost captures to shedding is tagged so that it can be re-processed
+            boolean shed = skipped || level == LoadShedder.MATCH_ONLY;
+            if (shed && tagOnShed != null && !tagOnShed.equals("")) {
+                e.tag(tagOnShed);
+            }
             if (matched) {
                 filterMatchListener.filterMatched(e);
-            } else if (result != null && !result.timedOut && tagOnFailure != null && !tagOnFailure.equals("")) {
+            } else if (!shed && evaluated && tagOnFailure != null && !tagOnFailure.equals("")) {
                 e.tag(tagOnFailure);
             }
         }
-        return collection;
     }
 
-    private static GrokResult grok(Grok grok, String source) {
-        GrokResult result = new GrokResult();
+    // returns the result of the last string element and sets matched[0] if any element matched
+    private GrokResult grokList(GrokMatchEntry grok, Event e, List sourceList, boolean[] matched) {
+        ListCaptures values = grok.listCaptures.get();
+        values.clear();
+        GrokResult itemResult = new GrokResult();
+        GrokResult result = null;
+        boolean matchedItem = false;
+        matched[0] = false;
+        for (Object item : sourceList) {
+            if (item instanceof String) {
+                result = grok.batchable
+                        ? match(grok, (String) item, values, itemResult)
+                        : grok(grok, (String) item, itemResult);
+                if (result.timedOut) {
+                    e.tag(tagOnTimeout);
+                } else if (result.matched) {
+                    matchedItem = true;
+                    matched[0] = true;
+                } else if (result.captures != null && result.captures.size() > 0) {
+                    for (Map.Entry<String, Object> entry : result.captures.entrySet()) {
+                        values.append(entry.getKey(), entry.getValue());
+                    }
+                    tagDateFailures(grok, e, result.captures);
+                    matched[0] = true;
+                }
+            }
+        }
+        if (matchedItem) {
+            markMatched(e);
+        }
+        values.writeTo(e);
+        values.trim();
+        return result;
+    }
+
+    private void setCaptures(GrokMatchEntry grok, Event e, Map<String, Object> captures) {
+        for (Map.Entry<String, Object> entry : captures.entrySet()) {
+            final String targetField = entry.getKey();
+            if (e.getField(targetField) == null || overwrite.contains(targetField)) {
+                e.setField(targetField, entry.getValue());
+            }
+        }
+        tagDateFailures(grok, e, captures);
+    }
+
+    // a timestamp that could not be parsed is captured as the string it is
+    private void tagDateFailures(GrokMatchEntry grok, Event e, Map<String, Object> captures) {
+        for (String field : grok.dateFields) {
+            if (captures.get(field) instanceof String && tagOnDateFailure != null && !tagOnDateFailure.equals("")) {
+                e.tag(tagOnDateFailure);
+                return;
+            }
+        }
+    }
+
+    // failures are only tagged if the last value matched did not time out
+    private void completeEvent(Event e, boolean matched, boolean evaluated, FilterMatchListener filterMatchListener) {
+        if (profileSampleRate > 0 && !warmingUp && profileCounter.incrementAndGet() % profileSampleRate == 0) {
+            profile(e);
+        }
+        if (matched) {
+            filterMatchListener.filterMatched(e);
+        } else if (evaluated && tagOnFailure != null && !tagOnFailure.equals("")) {
+            e.tag(tagOnFailure);
+        }
+    }
+
+    public Map<String, Object> getCoverage() {
+        Map<String, Object> coverage = new LinkedHashMap<>();
+        for (GrokMatchEntry entry : grokMatchEntries) {
+            if (entry.coverage != null) {
+                coverage.put(entry.label, entry.coverage.snapshot());
+            }
+        }
+        return coverage;
+    }
+
+    public Map<String, Object> getSlowestInputs() {
+        Map<String, Object> slowest = new LinkedHashMap<>();
+        for (GrokMatchEntry entry : grokMatchEntries) {
+            if (entry.slowest != null) {
+                slowest.put(entry.label, entry.slowest.snapshot());
+            }
+        }
+        return slowest;
+    }
+
+    public void dumpSlowestInputs(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (GrokMatchEntry entry : grokMatchEntries) {
+                if (entry.slowest != null) {
+                    entry.slowest.writeTo(out);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public Map<String, Object> getMemoryEstimate() {
+        Map<String, Object> estimate = new LinkedHashMap<>();
+        estimate.put("pattern_bank", patternBankBytes);
+        estimate.put("entries", new LinkedHashMap<>(entryBytes));
+        estimate.put("total", getRetainedBytes());
+        return estimate;
+    }
+
+    private long getRetainedBytes() {
+        return patternBankBytes + entryBytes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    // the total followed by the pattern bank and the entries from the largest to the smallest
+    private String memoryReport(Map<String, String> entryPatterns) {
+        StringBuilder report = new StringBuilder(String.format("%.1f MB: pattern bank %d KB",
+                getRetainedBytes() / 1024.0 / 1024.0, patternBankBytes / 1024));
+        entryBytes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> {
+                    String pattern = entryPatterns.get(entry.getKey());
+                    report.append(String.format(", '%s' %d KB (%s)", entry.getKey(), entry.getValue() / 1024,
+                            pattern.length() > 80 ? pattern.substring(0, 80) + "..." : pattern));
+                });
+        return report.toString();
+    }
+
+    // 0 while parsing fully, 1 while evaluating only essential entries, 2 while only classifying
+    public int getOverloadLevel() {
+        return shedder != null ? shedder.level() : LoadShedder.FULL;
+    }
+
+    public List<String> getEntryOrder() {
+        return getEntryOrder(defaultRoute);
+    }
+
+    public List<String> getEntryOrder(String routeValue) {
+        Route route = routes.get(routeValue);
+        return route != null ? getEntryOrder(route) : null;
+    }
+
+    private List<String> getEntryOrder(Route route) {
+        List<String> entryOrder = new ArrayList<>();
+        for (int k : route.order) {
+            entryOrder.add(grokMatchEntries[k].sourceField);
+        }
+        return entryOrder;
+    }
+
+    private void planEntryOrder() {
+        planner.plan();
+        int[] planned = planner.order();
+        defaultRoute.plan(planned);
+        for (Route route : routes.values()) {
+            route.plan(planned);
+        }
+    }
+
+    // the route of the value of the match_by field, falling back to the entries of match
+    private Route route(Event e) {
+        if (matchBy == null) {
+            return defaultRoute;
+        }
+        Object value = e.getField(matchBy);
+        Route route = value != null ? routes.get(value.toString()) : null;
+        return route != null ? route : defaultRoute;
+    }
+
+    String coverageReport() {
+        StringBuilder report = new StringBuilder("Grok pattern coverage of filter '" + id + "':");
+        for (GrokMatchEntry entry : grokMatchEntries) {
+            if (entry.coverage != null) {
+                entry.coverage.appendTo(report);
+            }
+        }
+        return report.toString();
+    }
+
+    // runs the samples through the filter so that the JIT has compiled the matchers before the first batch
+    private void warmUp(List<String> samples, long iterations) {
+        boolean[] matched = new boolean[samples.size()];
+        List<String> routeValues = new ArrayList<>();
+        routeValues.add(null);
+        routeValues.addAll(routes.keySet());
+        long start = System.nanoTime();
+        warmingUp = true;
+        for (long n = 0; n < iterations; n++) {
+            for (int s = 0; s < samples.size(); s++) {
+                for (String routeValue : routeValues) {
+                    Event e = new org.logstash.Event();
+                    Route route = routeValue == null ? defaultRoute : routes.get(routeValue);
+                    for (int k : route.declared) {
+                        e.setField(grokMatchEntries[k].sourceField, samples.get(s));
+                    }
+                    if (routeValue != null) {
+                        e.setField(matchBy, routeValue);
+                    }
+                    final int sample = s;
+                    filter(Collections.singletonList(e), event -> matched[sample] = true);
+                }
+            }
+        }
+        warmingUp = false;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (int s = 0; s < samples.size(); s++) {
+            if (!matched[s]) {
+                unmatchedWarmupSamples.add(samples.get(s));
+            }
+        }
+        logger.info("Warm-up of grok filter '{}' with {} samples and {} iterations took {} ms, {} of {} samples matched",
+                id, samples.size(), iterations, elapsedMillis, samples.size() - unmatchedWarmupSamples.size(), samples.size());
+        // the first batch is matched in the order the warm-up measured rather than in the declared order
+        if (planner != null) {
+            planEntryOrder();
+            logger.info("Grok filter '{}' tries its match entries in the order {}", id, getEntryOrder());
+        }
+        for (String sample : unmatchedWarmupSamples) {
+            logger.warn("Warm-up sample did not match any pattern of grok filter '{}': {}", id, sample);
+        }
+    }
+
+    // times every entry and alternative of the event's route once more
+    private void profile(Event e) {
+        Map<String, Object> profile = new HashMap<>();
+        for (int k : route(e).declared) {
+            GrokMatchEntry entry = grokMatchEntries[k];
+            Object source = e.getField(entry.sourceField);
+            List values = source instanceof List ? (List) source : Collections.singletonList(source);
+            List<Object> entryProfiles = new ArrayList<>();
+            for (Object value : values) {
+                if (value instanceof String) {
+                    entryProfiles.add(profile(entry, (String) value));
+                }
+            }
+            if (entryProfiles.size() > 0) {
+                profile.put(entry.sourceField, entryProfiles);
+            }
+        }
+        if (profileTarget != null) {
+            e.setField(profileTarget, profile);
+        } else {
+            profileLogger.info("Grok profile of filter '{}': {}", id, profile);
+        }
+    }
+
+    private static Map<String, Object> profile(GrokMatchEntry entry, String source) {
+        Map<String, Object> entryProfile = new HashMap<>();
+        long start = System.nanoTime();
+        GrokResult result = match(entry, source, new GrokResult());
+        entryProfile.put("nanos", System.nanoTime() - start);
+        entryProfile.put("matched", result.matched || result.captures != null);
+        entryProfile.put("timed_out", result.timedOut);
+
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        List<Object> alternativeProfiles = new ArrayList<>();
+        for (int k = 0; k < entry.alternatives.size(); k++) {
+            Map<String, Object> alternativeProfile = new HashMap<>();
+            alternativeProfile.put("pattern", entry.alternatives.pattern(k));
+            boolean timedOut = false;
+            int offset = -1;
+            start = System.nanoTime();
+            try {
+                offset = entry.alternatives.search(k, bytes);
+            } catch (RuntimeException ex) {
+                if (!isTimeout(ex)) {
+                    throw ex;
+                }
+                timedOut = true;
+            }
+            alternativeProfile.put("nanos", System.nanoTime() - start);
+            alternativeProfile.put("matched", offset >= 0);
+            alternativeProfile.put("timed_out", timedOut);
+            alternativeProfiles.add(alternativeProfile);
+        }
+        entryProfile.put("alternatives", alternativeProfiles);
+        return entryProfile;
+    }
+
+    List<String> getUnmatchedWarmupSamples() {
+        return unmatchedWarmupSamples;
+    }
+
+    private void markMatched(Event e) {
+        if (tagOnMatch != null && !tagOnMatch.equals("")) {
+            e.tag(tagOnMatch);
+        }
+        if (matchFlag != null) {
+            e.setField(matchFlag, true);
+        }
+    }
+
+    private GrokResult grok(GrokMatchEntry entry, String source) {
+        return grok(entry, source, new GrokResult());
+    }
+
+    private GrokResult grok(GrokMatchEntry entry, String source, GrokResult result) {
+        // the warm-up samples say nothing about the events the filter sees
+        if (warmingUp || entry.coverage == null && entry.slowest == null) {
+            return match(entry, source, result);
+        }
+        long start = System.nanoTime();
+        match(entry, source, result);
+        long elapsed = System.nanoTime() - start;
+        boolean matched = result.matched || result.captures != null;
+        if (entry.coverage != null) {
+            entry.coverage.record(source, elapsed, matched);
+        }
+        if (entry.slowest != null) {
+            entry.slowest.record(source, elapsed, result.timedOut ? SlowestInputs.TIMED_OUT
+                    : matched ? SlowestInputs.MATCHED : SlowestInputs.FAILED);
+        }
+        return result;
+    }
+
+    // whether the entry matches, without extracting any capture
+    private static GrokResult classify(GrokMatchEntry entry, String source, GrokResult result) {
+        result.captures = null;
+        result.matched = false;
+        result.timedOut = false;
+        try {
+            if (entry.trie != null) {
+                result.matched = entry.trie.matches(source);
+            } else if (entry.matchOnly != null) {
+                result.matched = entry.matchOnly.matches(source);
+            } else {
+                result.matched = entry.compiled.matches(source);
+            }
+        } catch (RuntimeException ex) {
+            if (!isTimeout(ex)) {
+                throw ex;
+            }
+            result.timedOut = true;
+        }
+        return result;
+    }
+
+    // like match(GrokMatchEntry, String, GrokResult), in the scratch space of the entry's list captures
+    private static GrokResult match(GrokMatchEntry entry, String source, ListCaptures scratch, GrokResult result) {
+        result.captures = null;
+        result.matched = false;
+        result.timedOut = false;
+        scratch.captures.clear();
+        int length = scratch.encode(source);
         try {
-            result.captures = grok.captures(source);
+            result.captures = entry.compiled.captures(scratch.buffer, 0, length, scratch.captures)
+                    ? scratch.captures
+                    : null;
         } catch (RuntimeException ex) {
-            if (ex.getMessage().startsWith("grok pattern matching was interrupted after")) {
+            if (!isTimeout(ex)) {
+                throw ex;
+            }
+            result.timedOut = true;
+        }
+        return result;
+    }
+
+    // like match(GrokMatchEntry, String, GrokResult) for entries that match on joni alone
+    private static GrokResult match(GrokMatchEntry entry, RawStrings source, GrokResult result) {
+        result.captures = null;
+        result.matched = false;
+        result.timedOut = false;
+        try {
+            if (entry.matchOnly != null) {
+                result.matched = entry.matchOnly.matches(source.bytes, source.start, source.end);
+            } else {
+                Map<String, Object> captures = new HashMap<>();
+                result.captures = entry.compiled.captures(source.bytes, source.start, source.end, captures)
+                        ? captures
+                        : null;
+            }
+        } catch (RuntimeException ex) {
+            if (!isTimeout(ex)) {
+                throw ex;
+            }
+            result.timedOut = true;
+        }
+        return result;
+    }
+
+    private static GrokResult match(GrokMatchEntry entry, String source, GrokResult result) {
+        result.captures = null;
+        result.matched = false;
+        result.timedOut = false;
+        if (entry.matchOnly != null) {
+            try {
+                result.matched = entry.trie != null ? entry.trie.matches(source) : entry.matchOnly.matches(source);
+            } catch (RuntimeException ex) {
+                if (!isTimeout(ex)) {
+                    throw ex;
+                }
                 result.timedOut = true;
+            }
+            return result;
+        }
+        try {
+            if (entry.matcher != null) {
+                Map<String, Object> captures = entry.matcher.captures(source);
+                if (captures != PatternMatcher.UNDECIDED) {
+                    if (captures != null) {
+                        intern(captures, entry.interners);
+                    }
+                    result.captures = captures;
+                    return result;
+                }
+            }
+            if (entry.trie != null) {
+                result.captures = entry.trie.captures(source);
+            } else if (entry.compiled != null) {
+                result.captures = entry.compiled.captures(source);
             } else {
+                result.captures = entry.grok.captures(source);
+            }
+        } catch (RuntimeException ex) {
+            if (!isTimeout(ex)) {
                 throw ex;
             }
+            result.timedOut = true;
         }
         return result;
     }
 
-    private static void appendValue(Map<String, List<Object>> values, String key, Object value) {
-        List<Object> valuesList = values.computeIfAbsent(key, k -> new ArrayList<>());
-        valuesList.add(value);
+    // whether the exception is the one the watchdog raises in the matching thread when a match times out
+    static boolean isTimeout(RuntimeException ex) {
+        return ex.getMessage() != null && ex.getMessage().startsWith("grok pattern matching was interrupted after");
+    }
+
+    // the fast-path matchers extract captures as strings, which can only be swapped for the interned instances
+    private static void intern(Map<String, Object> captures, Map<String, CaptureInterner> interners) {
+        for (Map.Entry<String, CaptureInterner> interner : interners.entrySet()) {
+            Object value = captures.get(interner.getKey());
+            if (value instanceof String) {
+                captures.put(interner.getKey(), interner.getValue().intern((String) value));
+            }
+        }
+    }
+
+    // names of the fields an expanded grok expression can capture into, from groups named PATTERN[:field[:type]]
+    static List<String> captureFields(String expression) {
+        List<String> fields = new ArrayList<>();
+        java.util.regex.Matcher m = NAMED_GROUP.matcher(expression);
+        while (m.find()) {
+            String[] parts = m.group(1).split(":");
+            String field = parts.length >= 2 ? parts[1] : parts[0];
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    static List<String> dateFields(String expression) {
+        Map<String, Boolean> dated = new LinkedHashMap<>();
+        java.util.regex.Matcher m = NAMED_GROUP.matcher(expression);
+        while (m.find()) {
+            String[] parts = m.group(1).split(":");
+            String field = parts.length >= 2 ? parts[1] : parts[0];
+            boolean date = parts.length == 3 && (parts[2].equals("epoch_millis") || parts[2].equals("timestamp"));
+            dated.merge(field, date, Boolean::logicalAnd);
+        }
+        List<String> fields = new ArrayList<>();
+        for (Map.Entry<String, Boolean> field : dated.entrySet()) {
+            if (field.getValue()) {
+                fields.add(field.getKey());
+            }
+        }
+        return fields;
     }
 
-    private static String combinePatterns(List<String> patterns) {
+    static String combinePatterns(List<String> patterns) {
         String combinedPattern;
         if (patterns.size() > 1) {
             combinedPattern = "";
@@ -216,18 +1121,13 @@ public class Jgrok implements Filter {
         return combinedPattern;
     }
 
-    private static ThreadWatchdog createGrokThreadWatchdog(long checkIntervalMillis, long maxExecutionTimeMillis) {
-        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor();
-        BiFunction<Long, Runnable, ScheduledFuture<?>> scheduler2 =
-                (delay, command) ->  ses.schedule(command, delay, TimeUnit.MILLISECONDS);
-
-        CachedTimeThread cachedTimeThread = new CachedTimeThread("GrokWatchdogTimeThread", checkIntervalMillis);
-        cachedTimeThread.start();
-
-        return ThreadWatchdog.newInstance(checkIntervalMillis, maxExecutionTimeMillis, cachedTimeThread::relativeTimeInMillis, scheduler2);
+    static Map<String, String> loadPatternBank(Configuration config) {
+        return PatternBank.builtin()
+                .overlay(readPatternsFromDirs(config.get(PATTERNS_DIR), config.get(PATTERNS_FILES_GLOB)))
+                .overlay(readPatternsFromConfig(config.get(PATTERN_DEFINITIONS)));
     }
 
-    private static Map<String, String> readPatternsFromDirs(List<Object> dirs, String glob) {
+    static Map<String, String> readPatternsFromDirs(List<Object> dirs, String glob) {
         Map<String, String> patterns = new HashMap<>();
         for (Object dir : dirs) {
             if (!(dir instanceof String)) {
@@ -257,11 +1157,37 @@ public class Jgrok implements Filter {
             if (spaceIndex == -1 || spaceIndex > trimmedLine.length() - 1) {
                 throw new IllegalStateException("Could not find 'NAME PATTERN' format in patterns file '" + patternFile.toString() + "'");
             }
-            patterns.put(trimmedLine.substring(0, spaceIndex - 1), trimmedLine.substring(spaceIndex + 1));
+            // accepts both "NAME pattern" and "NAME, pattern"
+            String name = trimmedLine.charAt(spaceIndex - 1) == ','
+                    ? trimmedLine.substring(0, spaceIndex - 1) : trimmedLine.substring(0, spaceIndex);
+            patterns.put(name, trimmedLine.substring(spaceIndex + 1));
         }
     }
 
-    private static Map<String, String> readPatternsFromConfig(Map<String, Object> patternDefsConfig) {
+    static List<String> readWarmupSamples(List<Object> samplesConfig, String samplesFile) {
+        List<String> samples = new ArrayList<>();
+        for (Object sample : samplesConfig) {
+            if (sample instanceof String) {
+                samples.add((String) sample);
+            } else {
+                throw new IllegalArgumentException("Warm-up sample '" + sample + "' must be a string type");
+            }
+        }
+        if (samplesFile != null) {
+            try {
+                for (String line : Files.readAllLines(Paths.get(samplesFile))) {
+                    if (line.length() > 0) {
+                        samples.add(line);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Error reading warm-up samples from file '" + samplesFile + "'", ex);
+            }
+        }
+        return samples;
+    }
+
+    static Map<String, String> readPatternsFromConfig(Map<String, Object> patternDefsConfig) {
         Map<String, String> patterns = new HashMap<>();
         for (Map.Entry<String, Object> entry : patternDefsConfig.entrySet()) {
             if (!(entry.getValue() instanceof String)) {
@@ -276,8 +1202,15 @@ public class Jgrok implements Filter {
     @Override
     public Collection<PluginConfigSpec<?>> configSchema() {
         return PluginHelper.commonFilterSettings(Arrays.asList(MATCH, TIMEOUT_MILLIS, BREAK_ON_MATCH, TAG_ON_TIMEOUT,
-                TAG_ON_FAILURE, NAMED_CAPTURES_ONLY, OVERWRITE, PATTERN_DEFINITIONS, PATTERNS_DIR,
-                PATTERNS_FILES_GLOB));
+                TAG_ON_FAILURE, TAG_ON_DATE_FAILURE, NAMED_CAPTURES_ONLY, OVERWRITE, PATTERN_DEFINITIONS, PATTERNS_DIR,
+                PATTERNS_FILES_GLOB, INTRINSIC_MATCHERS, DISSECT_TOKENIZER, MERGE_PREFIXES, WARMUP_SAMPLES,
+                WARMUP_SAMPLES_FILE, WARMUP_ITERATIONS, PROFILE_SAMPLE_RATE, PROFILE_TARGET,
+                MATCH_ONLY, TAG_ON_MATCH, MATCH_FLAG, INTERN_CAPTURES,
+                BATCH_MATCHING, COVERAGE_REPORT_INTERVAL, COVERAGE_SAMPLE_RATE, SLOWEST_INPUTS,
+                SLOWEST_INPUTS_MAX_LENGTH, SLOWEST_INPUTS_FILE, SLOWEST_INPUTS_DUMP_INTERVAL, ENTRY_ORDER,
+                ENTRY_ORDER_INTERVAL, OVERLOAD_LATENCY_MICROS, OVERLOAD_WINDOW, OVERLOAD_RECOVERY, ESSENTIAL_ENTRIES,
+                TAG_ON_SHED, RAW_SOURCE_BYTES, MATCH_BY, ROUTES,
+                MEMORY_BUDGET_MB));
     }
 
     @Override
@@ -285,45 +1218,153 @@ public class Jgrok implements Filter {
         return id;
     }
 
-    static class CachedTimeThread extends Thread {
+    private class GrokMatchEntry {
+
+        final String sourceField;
+        // the source field, prefixed with the value of the match_by field for the entries of a route
+        final String label;
+        final Route route;
+        final Grok grok;
+        final PrefixTrie trie;
+        final PatternMatcher matcher;
+        final Alternatives alternatives;
+        final CompiledGrok matchOnly;
+        final CompiledGrok compiled;
+        final Map<String, CaptureInterner> interners;
+        final Coverage coverage;
+        final SlowestInputs slowest;
+        final ThreadLocal<ListCaptures> listCaptures;
+        // the fields only ever captured with the ":epoch_millis" or ":timestamp" suffix
+        final String[] dateFields;
+        // whether string values are matched on joni alone with their captures extracted into a reused map
+        final boolean batchable;
+        // whether string values are matched as the bytes the event stores them in
+        final boolean rawBytes;
+
+        GrokMatchEntry(String sourceField, String label, Route route, Grok grok, PrefixTrie trie, PatternMatcher matcher,
+                       Alternatives alternatives, CompiledGrok matchOnly, CompiledGrok compiled,
+                       Map<String, CaptureInterner> interners, Coverage coverage, SlowestInputs slowest,
+                       List<String> captureFields, List<String> dateFields) {
+            this.sourceField = sourceField;
+            this.label = label;
+            this.route = route;
+            this.grok = grok;
+            this.trie = trie;
+            this.matcher = matcher;
+            this.alternatives = alternatives;
+            this.matchOnly = matchOnly;
+            this.compiled = compiled;
+            this.interners = interners;
+            this.coverage = coverage;
+            this.slowest = slowest;
+            this.dateFields = dateFields.toArray(new String[0]);
+            this.batchable = compiled != null && matcher == null && coverage == null && slowest == null;
+            this.rawBytes = rawSourceBytes && (compiled != null || matchOnly != null && trie == null)
+                    && matcher == null && coverage == null && slowest == null;
+
+            String[] fields = captureFields.toArray(new String[0]);
+            boolean[] overwriteFields = new boolean[fields.length];
+            Map<String, Integer> slots = new HashMap<>();
+            for (int k = 0; k < fields.length; k++) {
+                overwriteFields[k] = overwrite.contains(fields[k]);
+                slots.put(fields[k], k);
+            }
+            this.listCaptures = ThreadLocal.withInitial(() -> new ListCaptures(fields, overwriteFields, slots));
+        }
+    }
+
+    // the entries for one value of the match_by field, or those of match for all other events
+    private class Route {
 
-        final long interval;
-        volatile boolean running = true;
-        volatile long relativeMillis;
+        final int[] declared;
+        volatile int[] order;
 
-        CachedTimeThread(String name, long interval) {
-            super(name);
-            this.interval = interval;
-            this.relativeMillis = System.nanoTime() / 1_000_000;
-            setDaemon(true);
+        Route(int[] declared) {
+            this.declared = declared;
+            this.order = declared;
         }
 
-        long relativeTimeInMillis() {
-            return relativeMillis;
+        // the planner ranks every entry on its own, so the order of a route is the planned order of its entries
+        void plan(int[] planned) {
+            order = Arrays.stream(planned).filter(k -> grokMatchEntries[k].route == this).toArray();
         }
+    }
 
-        @Override
-        public void run() {
-            while (running) {
-                relativeMillis = System.nanoTime() / 1_000_000;
-                try {
-                    Thread.sleep(interval);
-                } catch (InterruptedException e) {
-                    running = false;
-                    return;
+    // per-thread slots for the values captured from the elements of a list
+    private class ListCaptures {
+
+        final String[] fields;
+        final boolean[] overwriteFields;
+        final Map<String, Integer> slots;
+        final List<Object>[] values;
+        Map<String, List<Object>> otherValues;
+        // the UTF-8 bytes and the captures of the element being matched by a batchable entry
+        byte[] buffer = new byte[0];
+        final Map<String, Object> captures = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        ListCaptures(String[] fields, boolean[] overwriteFields, Map<String, Integer> slots) {
+            this.fields = fields;
+            this.overwriteFields = overwriteFields;
+            this.slots = slots;
+            this.values = new List[fields.length];
+            for (int k = 0; k < values.length; k++) {
+                values[k] = new ArrayList<>();
+            }
+        }
+
+        void append(String field, Object value) {
+            Integer slot = slots.get(field);
+            if (slot != null) {
+                values[slot].add(value);
+            } else {
+                if (otherValues == null) {
+                    otherValues = new HashMap<>();
                 }
+                otherValues.computeIfAbsent(field, f -> new ArrayList<>()).add(value);
             }
         }
-    }
 
-    private class GrokMatchEntry {
+        // discards values left behind if matching a previous event failed with an exception
+        void clear() {
+            for (List<Object> slot : values) {
+                slot.clear();
+            }
+            otherValues = null;
+            captures.clear();
+        }
 
-        final String sourceField;
-        final Grok grok;
+        void trim() {
+            if (buffer.length > MatchBatch.MAX_RETAINED_BYTES) {
+                buffer = new byte[0];
+            }
+        }
 
-        GrokMatchEntry(String sourceField, Grok grok) {
-            this.sourceField = sourceField;
-            this.grok = grok;
+        int encode(String value) {
+            if (buffer.length < 3 * value.length()) {
+                buffer = new byte[Math.max(3 * value.length(), 256)];
+            }
+            return MatchBatch.encode(value, buffer, 0);
+        }
+
+        void writeTo(Event e) {
+            for (int k = 0; k < values.length; k++) {
+                if (values[k].size() > 0) {
+                    if (overwriteFields[k] || e.getField(fields[k]) == null) {
+                        e.setField(fields[k], values[k]);
+                    }
+                    values[k].clear();
+                }
+            }
+            if (otherValues != null) {
+                for (Map.Entry<String, List<Object>> entry : otherValues.entrySet()) {
+                    final String targetField = entry.getKey();
+                    if (e.getField(targetField) == null || overwrite.contains(targetField)) {
+                        e.setField(targetField, entry.getValue());
+                    }
+                }
+                otherValues = null;
+            }
         }
     }
 
@@ -353,6 +1394,8 @@ public class Jgrok implements Filter {
 
     private static class GrokResult {
         Map<String, Object> captures;
+        // set instead of captures by match-only entries
+        boolean matched;
         boolean timedOut;
     }
 }
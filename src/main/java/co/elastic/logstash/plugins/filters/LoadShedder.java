@@ -0,0 +1,82 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// sheds a level of work per window over the threshold and restores one after a calm recovery period
+final class LoadShedder {
+
+    static final int FULL = 0;
+    static final int ESSENTIAL = 1;
+    static final int MATCH_ONLY = 2;
+
+    private final long thresholdNanos;
+    private final long windowNanos;
+    private final long calmWindowsToRecover;
+    // the essential level is skipped when no entry is essential
+    private final boolean hasEssential;
+    // measures both the latency of batches and the windows
+    private final LongSupplier clock;
+
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final AtomicLong nextWindow;
+
+    // only accessed by the worker that closes the window
+    private long windowNanosSum;
+    private long windowEventsSum;
+    private long calmWindows;
+
+    private volatile int level = FULL;
+
+    LoadShedder(long thresholdNanos, long windowNanos, long recoveryNanos, boolean hasEssential, LongSupplier clock) {
+        this.thresholdNanos = thresholdNanos;
+        this.windowNanos = windowNanos;
+        this.calmWindowsToRecover = Math.max(1, recoveryNanos / windowNanos);
+        this.hasEssential = hasEssential;
+        this.clock = clock;
+        this.nextWindow = new AtomicLong(clock.getAsLong() + windowNanos);
+    }
+
+    long nanoTime() {
+        return clock.getAsLong();
+    }
+
+    int level() {
+        return level;
+    }
+
+    // only the worker that advances the window evaluates it
+    void record(long elapsedNanos, int batchEvents) {
+        nanos.add(elapsedNanos);
+        events.add(batchEvents);
+        long next = nextWindow.get();
+        long now = clock.getAsLong();
+        if (now - next >= 0 && nextWindow.compareAndSet(next, now + windowNanos)) {
+            closeWindow();
+        }
+    }
+
+    private synchronized void closeWindow() {
+        long nanosSum = nanos.sum();
+        long eventsSum = events.sum();
+        long windowEvents = eventsSum - windowEventsSum;
+        long average = windowEvents == 0 ? 0 : (nanosSum - windowNanosSum) / windowEvents;
+        windowNanosSum = nanosSum;
+        windowEventsSum = eventsSum;
+        if (average > thresholdNanos) {
+            calmWindows = 0;
+            if (level < MATCH_ONLY) {
+                level = level == FULL && hasEssential ? ESSENTIAL : MATCH_ONLY;
+            }
+        } else if (average < thresholdNanos / 2 && level > FULL) {
+            if (++calmWindows >= calmWindowsToRecover) {
+                calmWindows = 0;
+                level = level == MATCH_ONLY && hasEssential ? ESSENTIAL : FULL;
+            }
+        } else {
+            calmWindows = 0;
+        }
+    }
+}
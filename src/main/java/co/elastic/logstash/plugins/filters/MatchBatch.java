@@ -0,0 +1,104 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// per-thread arena that the string values of one entry are encoded into across a batch
+final class MatchBatch {
+
+    // larger arrays are only kept for the batch that needed them
+    static final int MAX_RETAINED_BYTES = 1 << 20;
+    static final int MAX_RETAINED_VALUES = 1 << 13;
+
+    byte[] arena = new byte[4096];
+    int[] events = new int[128];
+    // the arena, or the array holding a value that was not copied, which stays valid as the arena grows
+    byte[][] values = new byte[128][];
+    int[] starts = new int[128];
+    int[] ends = new int[128];
+    int size;
+    private int length;
+    final Map<String, Object> captures = new HashMap<>();
+
+    void clear() {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        length = 0;
+    }
+
+    // drops the references to the values of the last batch and any array grown beyond the limits
+    void trim() {
+        clear();
+        captures.clear();
+        if (arena.length > MAX_RETAINED_BYTES) {
+            arena = new byte[4096];
+        }
+        if (events.length > MAX_RETAINED_VALUES) {
+            events = new int[128];
+            values = new byte[128][];
+            starts = new int[128];
+            ends = new int[128];
+        }
+    }
+
+    void add(int event, byte[] bytes, int start, int end) {
+        grow();
+        events[size] = event;
+        values[size] = bytes;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    void add(int event, String value) {
+        grow();
+        // at most three bytes per char, as a surrogate pair takes four bytes for two chars
+        int required = length + 3 * value.length();
+        if (required > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(required, arena.length * 2));
+        }
+        events[size] = event;
+        values[size] = arena;
+        starts[size] = length;
+        length = encode(value, arena, length);
+        ends[size] = length;
+        size++;
+    }
+
+    private void grow() {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+    }
+
+    // encodes like String.getBytes(UTF_8), replacing unpaired surrogates with '?'
+    static int encode(String value, byte[] bytes, int offset) {
+        for (int k = 0; k < value.length(); k++) {
+            char c = value.charAt(k);
+            if (c < 0x80) {
+                bytes[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[offset++] = (byte) (0xc0 | c >> 6);
+                bytes[offset++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && k + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(k + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++k));
+                bytes[offset++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[offset++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                bytes[offset++] = '?';
+            } else {
+                bytes[offset++] = (byte) (0xe0 | c >> 12);
+                bytes[offset++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[offset++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,120 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.nio.charset.StandardCharsets;
+
+// coerces :int and :float captures, parsing them in place from the matched bytes where possible
+final class NumericCoercion {
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    // extends the cache of Integer.valueOf to cover HTTP status codes and small sizes and counts
+    private static final Integer[] INTEGERS = new Integer[CACHE_HIGH - CACHE_LOW];
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+    private static final int MAX_EXACT_SIGNIFICAND = 1 << 24;
+
+    static {
+        for (int k = 0; k < INTEGERS.length; k++) {
+            INTEGERS[k] = k + CACHE_LOW;
+        }
+    }
+
+    private NumericCoercion() {
+    }
+
+    // mirrors the coercion done by grok for the optional ":int" and ":float" suffixes, and parses timestamps
+    static Object coerce(String value, String type) {
+        switch (type) {
+            case "int":
+                return Integer.parseInt(value);
+            case "float":
+                return Float.parseFloat(value);
+            case "epoch_millis":
+            case "timestamp":
+                return TimestampCoercion.coerce(value, type);
+            default:
+                return value;
+        }
+    }
+
+    static Object coerce(byte[] bytes, int start, int end, String type) {
+        switch (type) {
+            case "int":
+                return parseInt(bytes, start, end);
+            case "float":
+                return parseFloat(bytes, start, end);
+            case "epoch_millis":
+            case "timestamp":
+                return TimestampCoercion.coerce(bytes, start, end, type);
+            default:
+                return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    static Integer parseInt(byte[] bytes, int start, int end) {
+        int k = start;
+        boolean negative = false;
+        if (k < end && (bytes[k] == '-' || bytes[k] == '+')) {
+            negative = bytes[k] == '-';
+            k++;
+        }
+        // ten digits may overflow, which the slow path reports
+        if (k == end || end - k > 10) {
+            return (Integer) slowPath(bytes, start, end, "int");
+        }
+        long value = 0;
+        for (; k < end; k++) {
+            int digit = bytes[k] - '0';
+            if (digit < 0 || digit > 9) {
+                return (Integer) slowPath(bytes, start, end, "int");
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return (Integer) slowPath(bytes, start, end, "int");
+        }
+        return box((int) value);
+    }
+
+    static Float parseFloat(byte[] bytes, int start, int end) {
+        int k = start;
+        boolean negative = false;
+        if (k < end && (bytes[k] == '-' || bytes[k] == '+')) {
+            negative = bytes[k] == '-';
+            k++;
+        }
+        int significand = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; k < end; k++) {
+            byte b = bytes[k];
+            if (b >= '0' && b <= '9') {
+                significand = significand * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (significand >= MAX_EXACT_SIGNIFICAND) {
+                    return (Float) slowPath(bytes, start, end, "float");
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return (Float) slowPath(bytes, start, end, "float");
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return (Float) slowPath(bytes, start, end, "float");
+        }
+        float value = fractionDigits > 0 ? significand / POWERS_OF_TEN[fractionDigits] : significand;
+        return negative ? -value : value;
+    }
+
+    private static Integer box(int value) {
+        return value >= CACHE_LOW && value < CACHE_HIGH ? INTEGERS[value - CACHE_LOW] : Integer.valueOf(value);
+    }
+
+    private static Object slowPath(byte[] bytes, int start, int end, String type) {
+        return coerce(new String(bytes, start, end - start, StandardCharsets.UTF_8), type);
+    }
+}
@@ -0,0 +1,140 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// layered and canonicalized so that filters with the same pattern definitions share one copy
+final class PatternBank extends AbstractMap<String, String> {
+
+    private static final PatternBank BUILTIN = new PatternBank(null, Grok.getBuiltinPatterns());
+
+    // canonical definition maps, kept only as long as some pattern bank refers to them
+    private static final Map<Map<String, String>, WeakReference<Map<String, String>>> CANONICAL = new WeakHashMap<>();
+
+    private final PatternBank base;
+    private final Map<String, String> definitions;
+    private final int size;
+    private final Set<Entry<String, String>> entrySet = new EntrySet();
+
+    private PatternBank(PatternBank base, Map<String, String> definitions) {
+        this.base = base;
+        this.definitions = definitions;
+        int shadowed = 0;
+        if (base != null) {
+            for (String name : definitions.keySet()) {
+                if (base.containsKey(name)) {
+                    shadowed++;
+                }
+            }
+        }
+        this.size = definitions.size() + (base == null ? 0 : base.size - shadowed);
+    }
+
+    static PatternBank builtin() {
+        return BUILTIN;
+    }
+
+    PatternBank overlay(Map<String, String> definitions) {
+        if (definitions.isEmpty()) {
+            return this;
+        }
+        return new PatternBank(this, canonical(definitions));
+    }
+
+    @Override
+    public String get(Object name) {
+        for (PatternBank bank = this; bank != null; bank = bank.base) {
+            String definition = bank.definitions.get(name);
+            if (definition != null) {
+                return definition;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return get(name) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return entrySet;
+    }
+
+    private static synchronized Map<String, String> canonical(Map<String, String> definitions) {
+        WeakReference<Map<String, String>> reference = CANONICAL.get(definitions);
+        Map<String, String> canonical = reference == null ? null : reference.get();
+        if (canonical == null) {
+            Map<String, String> copy = new HashMap<>();
+            for (Entry<String, String> entry : definitions.entrySet()) {
+                copy.put(entry.getKey().intern(), entry.getValue().intern());
+            }
+            canonical = Collections.unmodifiableMap(copy);
+            CANONICAL.put(canonical, new WeakReference<>(canonical));
+        }
+        return canonical;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, String>> {
+
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<Entry<String, String>>() {
+
+                private final Iterator<Entry<String, String>> own = definitions.entrySet().iterator();
+                private final Iterator<Entry<String, String>> inherited =
+                        base == null ? Collections.emptyIterator() : base.entrySet().iterator();
+                private Entry<String, String> next = advance();
+
+                private Entry<String, String> advance() {
+                    if (own.hasNext()) {
+                        return own.next();
+                    }
+                    while (inherited.hasNext()) {
+                        Entry<String, String> entry = inherited.next();
+                        if (!definitions.containsKey(entry.getKey())) {
+                            return entry;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry<String, String> current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// matches an entry without the joni regex
+interface PatternMatcher {
+
+    Map<String, Object> UNDECIDED = Collections.unmodifiableMap(new HashMap<>());
+
+    // UNDECIDED if the text must be matched with the regex instead
+    Map<String, Object> captures(String text);
+}
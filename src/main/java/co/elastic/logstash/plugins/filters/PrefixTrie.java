@@ -0,0 +1,307 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// searches with alternatives merged on shared prefixes, then matches the combined expression there for its captures
+final class PrefixTrie {
+
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\[1-9kg]");
+
+    private final CompiledGrok trie;
+    private final CompiledGrok combined;
+
+    private PrefixTrie(CompiledGrok trie, CompiledGrok combined) {
+        this.trie = trie;
+        this.combined = combined;
+    }
+
+    static PrefixTrie compile(List<String> patterns, Grok grok, ThreadWatchdog threadWatchdog) {
+        String merged = merge(patterns);
+        if (merged == null || hasBackreference(patterns, grok)) {
+            return null;
+        }
+        return new PrefixTrie(CompiledGrok.compile(grok, merged, threadWatchdog),
+                CompiledGrok.compile(grok, Jgrok.combinePatterns(patterns), threadWatchdog));
+    }
+
+    static PrefixTrie compile(List<String> patterns, Grok grok, ThreadWatchdog threadWatchdog, CompiledGrok combined) {
+        String merged = merge(patterns);
+        if (merged == null || hasBackreference(patterns, grok)) {
+            return null;
+        }
+        return new PrefixTrie(CompiledGrok.compile(grok, merged, threadWatchdog), combined);
+    }
+
+    // backreferences in pattern definitions would refer to different groups once alternatives are merged
+    private static boolean hasBackreference(List<String> patterns, Grok grok) {
+        return BACKREFERENCE.matcher(grok.toRegex(Jgrok.combinePatterns(patterns))).find();
+    }
+
+    Map<String, Object> captures(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int start = trie.search(bytes, 0);
+        if (start < 0) {
+            return null;
+        }
+        Map<String, Object> captures = combined.capturesAt(bytes, start);
+        return captures != null ? captures : combined.captures(text);
+    }
+
+    boolean matches(String text) {
+        return trie.search(text.getBytes(StandardCharsets.UTF_8), 0) >= 0;
+    }
+
+    static String merge(List<String> patterns) {
+        if (patterns.size() < 2) {
+            return null;
+        }
+        List<List<String>> sequences = new ArrayList<>();
+        for (String pattern : patterns) {
+            List<String> pieces = split(pattern);
+            if (pieces == null) {
+                return null;
+            }
+            sequences.add(pieces);
+        }
+        StringBuilder merged = new StringBuilder();
+        if (!append(merged, sequences, 0)) {
+            return null;
+        }
+        return merged.toString();
+    }
+
+    // returns false if no two sequences shared their first piece
+    private static boolean append(StringBuilder merged, List<List<String>> sequences, int depth) {
+        if (sequences.size() == 1) {
+            List<String> sequence = sequences.get(0);
+            for (int k = depth; k < sequence.size(); k++) {
+                merged.append(sequence.get(k));
+            }
+            return false;
+        }
+        boolean ended = false;
+        Map<String, List<List<String>>> branches = new LinkedHashMap<>();
+        for (List<String> sequence : sequences) {
+            if (sequence.size() == depth) {
+                ended = true;
+            } else {
+                branches.computeIfAbsent(sequence.get(depth), piece -> new ArrayList<>()).add(sequence);
+            }
+        }
+        if (branches.isEmpty()) {
+            return false;
+        }
+        if (branches.size() == 1 && !ended) {
+            Map.Entry<String, List<List<String>>> branch = branches.entrySet().iterator().next();
+            merged.append(branch.getKey());
+            append(merged, branch.getValue(), depth + 1);
+            return true;
+        }
+        boolean shared = false;
+        merged.append("(?:");
+        String separator = "";
+        for (Map.Entry<String, List<List<String>>> branch : branches.entrySet()) {
+            merged.append(separator).append(branch.getKey());
+            shared |= branch.getValue().size() > 1;
+            append(merged, branch.getValue(), depth + 1);
+            separator = "|";
+        }
+        if (ended) {
+            merged.append('|');
+        }
+        merged.append(')');
+        return shared;
+    }
+
+    // null for syntax whose meaning depends on the surrounding expression
+    static List<String> split(String pattern) {
+        List<String> pieces = new ArrayList<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            int end;
+            String piece = null;
+            if (c == '%' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '{') {
+                end = pattern.indexOf('}', i + 2);
+                if (end == -1 || pattern.substring(i, end).indexOf('=') != -1) {
+                    return null;
+                }
+                end++;
+                int colon = pattern.indexOf(':', i);
+                piece = colon != -1 && colon < end ? pattern.substring(i, colon) + "}" : pattern.substring(i, end);
+            } else if (c == '\\') {
+                end = escapeEnd(pattern, i);
+            } else if (c == '[') {
+                end = classEnd(pattern, i);
+            } else if (c == '(') {
+                end = groupEnd(pattern, i);
+            } else if (c == '|') {
+                // an alternation inside a single match pattern is kept as one piece
+                return groupEnd(pattern, -1) == -1 ? null : Collections.singletonList("(?:" + pattern + ")");
+            } else if (c == ')') {
+                return null;
+            } else {
+                end = Character.isHighSurrogate(c) && i + 1 < pattern.length() ? i + 2 : i + 1;
+            }
+            if (end == -1) {
+                return null;
+            }
+            int quantified = quantifierEnd(pattern, end);
+            if (piece == null) {
+                piece = pattern.substring(i, quantified);
+            } else {
+                piece += pattern.substring(end, quantified);
+            }
+            pieces.add(piece);
+            i = quantified;
+        }
+        return pieces;
+    }
+
+    private static int escapeEnd(String pattern, int i) {
+        if (i + 1 >= pattern.length()) {
+            return -1;
+        }
+        char c = pattern.charAt(i + 1);
+        if ((c >= '1' && c <= '9') || c == 'k' || c == 'g' || c == 'C' || c == 'M') {
+            return -1;
+        }
+        int end = i + 2;
+        if (c == 'x' && end < pattern.length() && pattern.charAt(end) == '{') {
+            end = pattern.indexOf('}', end);
+            return end == -1 ? -1 : end + 1;
+        } else if (c == 'x') {
+            return scan(pattern, end, 2, "0123456789abcdefABCDEF");
+        } else if (c == '0') {
+            return scan(pattern, end, 2, "01234567");
+        } else if (c == 'u') {
+            return scan(pattern, end, 4, "0123456789abcdefABCDEF");
+        } else if (c == 'c') {
+            return end < pattern.length() ? end + 1 : -1;
+        } else if ((c == 'p' || c == 'P') && end < pattern.length() && pattern.charAt(end) == '{') {
+            end = pattern.indexOf('}', end);
+            return end == -1 ? -1 : end + 1;
+        } else if (c == 'p' || c == 'P') {
+            return end < pattern.length() ? end + 1 : -1;
+        } else if (Character.isHighSurrogate(c) && end < pattern.length()) {
+            return end + 1;
+        }
+        return end;
+    }
+
+    private static int scan(String pattern, int i, int max, String chars) {
+        int end = i;
+        while (end < pattern.length() && end - i < max && chars.indexOf(pattern.charAt(end)) != -1) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int classEnd(String pattern, int i) {
+        int k = i + 1;
+        if (k < pattern.length() && pattern.charAt(k) == '^') {
+            k++;
+        }
+        if (k < pattern.length() && pattern.charAt(k) == ']') {
+            k++;
+        }
+        while (k < pattern.length()) {
+            char c = pattern.charAt(k);
+            if (c == '\\') {
+                k += 2;
+            } else if (c == '[') {
+                k = classEnd(pattern, k);
+                if (k == -1) {
+                    return -1;
+                }
+            } else if (c == ']') {
+                return k + 1;
+            } else {
+                k++;
+            }
+        }
+        return -1;
+    }
+
+    // with i == -1 checks that the whole pattern is balanced and free of unsupported syntax
+    private static int groupEnd(String pattern, int i) {
+        int depth = i == -1 ? 1 : 0;
+        int k = i == -1 ? 0 : i;
+        while (k < pattern.length()) {
+            char c = pattern.charAt(k);
+            if (c == '\\') {
+                k = escapeEnd(pattern, k);
+            } else if (c == '[') {
+                k = classEnd(pattern, k);
+            } else if (c == '%' && k + 1 < pattern.length() && pattern.charAt(k + 1) == '{') {
+                k = pattern.indexOf('}', k);
+                k = k == -1 ? -1 : k + 1;
+            } else if (c == '(') {
+                if (isOptionSwitch(pattern, k) || pattern.startsWith("(?(", k)) {
+                    return -1;
+                }
+                depth++;
+                k++;
+            } else if (c == ')') {
+                depth--;
+                k++;
+                if (depth == 0) {
+                    return k;
+                }
+            } else {
+                k++;
+            }
+            if (k == -1) {
+                return -1;
+            }
+        }
+        return i == -1 && depth == 1 ? pattern.length() : -1;
+    }
+
+    private static boolean isOptionSwitch(String pattern, int i) {
+        if (!pattern.startsWith("(?", i)) {
+            return false;
+        }
+        int k = i + 2;
+        while (k < pattern.length() && "imx-".indexOf(pattern.charAt(k)) != -1) {
+            k++;
+        }
+        return k > i + 2 && k < pattern.length() && pattern.charAt(k) == ')';
+    }
+
+    private static int quantifierEnd(String pattern, int i) {
+        int k = i;
+        while (k < pattern.length()) {
+            char c = pattern.charAt(k);
+            if (c == '*' || c == '+' || c == '?') {
+                k++;
+            } else if (c == '{') {
+                int close = pattern.indexOf('}', k);
+                if (close == -1 || !isInterval(pattern.substring(k + 1, close))) {
+                    return k;
+                }
+                k = close + 1;
+            } else {
+                return k;
+            }
+        }
+        return k;
+    }
+
+    private static boolean isInterval(String bounds) {
+        int comma = bounds.indexOf(',');
+        String lower = comma == -1 ? bounds : bounds.substring(0, comma);
+        String upper = comma == -1 ? "" : bounds.substring(comma + 1);
+        return (lower.length() > 0 || upper.length() > 0)
+                && lower.chars().allMatch(Character::isDigit) && upper.chars().allMatch(Character::isDigit);
+    }
+}
@@ -0,0 +1,43 @@
+package co.elastic.logstash.plugins.filters;
+
+import co.elastic.logstash.api.Event;
+import org.jcodings.Encoding;
+import org.jcodings.specific.USASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.jruby.RubyString;
+import org.jruby.util.ByteList;
+import org.jruby.util.StringSupport;
+
+// the bytes of a valid UTF-8 Ruby string field, which are only valid until the field is next modified
+final class RawStrings {
+
+    byte[] bytes;
+    int start;
+    int end;
+
+    boolean read(Event e, String field) {
+        if (!(e instanceof org.logstash.Event)) {
+            return false;
+        }
+        Object value = ((org.logstash.Event) e).getUnconvertedField(field);
+        if (!(value instanceof RubyString)) {
+            return false;
+        }
+        RubyString string = (RubyString) value;
+        Encoding encoding = string.getEncoding();
+        if (encoding != UTF8Encoding.INSTANCE && encoding != USASCIIEncoding.INSTANCE) {
+            return false;
+        }
+        // broken bytes would be matched as they are where the decoded string has replacement characters
+        int codeRange = string.scanForCodeRange();
+        if (codeRange != StringSupport.CR_7BIT
+                && !(codeRange == StringSupport.CR_VALID && encoding == UTF8Encoding.INSTANCE)) {
+            return false;
+        }
+        ByteList byteList = string.getByteList();
+        bytes = byteList.unsafeBytes();
+        start = byteList.begin();
+        end = start + byteList.realSize();
+        return true;
+    }
+}
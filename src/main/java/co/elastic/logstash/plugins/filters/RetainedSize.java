@@ -0,0 +1,158 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.jcodings.Encoding;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// estimates for a 64-bit JVM with compressed references, counting shared objects only once
+final class RetainedSize {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+    // a hash map node or linked list node per element
+    private static final int NODE = 32;
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return new Layout(type);
+        }
+    };
+
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    RetainedSize(Collection<?> shared) {
+        seen.addAll(shared);
+    }
+
+    long add(Object root) {
+        long size = 0;
+        Deque<Object> pending = new ArrayDeque<>();
+        push(pending, root);
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                size += array(o, pending);
+            } else if (o instanceof String) {
+                // a compact string of Latin-1 characters, the common case for patterns and field names
+                size += align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + ((String) o).length());
+            } else if (o instanceof Class || o instanceof ClassLoader || o instanceof Thread || o instanceof Enum
+                    || o instanceof Encoding) {
+                // singletons shared by the whole JVM, such as the character tables of an encoding
+                continue;
+            } else {
+                Layout layout = LAYOUTS.get(type);
+                size += layout.shallowSize;
+                for (Field field : layout.references) {
+                    push(pending, read(field, o));
+                }
+                if (layout.accessible) {
+                    continue;
+                }
+                if (o instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                        size += NODE + REFERENCE;
+                        push(pending, entry.getKey());
+                        push(pending, entry.getValue());
+                    }
+                } else if (o instanceof Collection) {
+                    for (Object element : (Collection<?>) o) {
+                        size += NODE;
+                        push(pending, element);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private long array(Object array, Deque<Object> pending) {
+        Class<?> component = array.getClass().getComponentType();
+        int length = java.lang.reflect.Array.getLength(array);
+        if (!component.isPrimitive()) {
+            for (Object element : (Object[]) array) {
+                push(pending, element);
+            }
+            return align(ARRAY_HEADER + (long) length * REFERENCE);
+        }
+        return align(ARRAY_HEADER + (long) length * primitiveSize(component));
+    }
+
+    private void push(Deque<Object> pending, Object o) {
+        if (o != null && seen.add(o)) {
+            pending.push(o);
+        }
+    }
+
+    private static Object read(Field field, Object o) {
+        try {
+            return field.get(o);
+        } catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static final class Layout {
+
+        final long shallowSize;
+        // the reference fields that could be made accessible
+        final Field[] references;
+        final boolean accessible;
+
+        Layout(Class<?> type) {
+            long size = OBJECT_HEADER;
+            List<Field> fields = new ArrayList<>();
+            boolean opened = true;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    if (field.getType().isPrimitive()) {
+                        size += primitiveSize(field.getType());
+                        continue;
+                    }
+                    size += REFERENCE;
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException ex) {
+                        // InaccessibleObjectException on Java 9 and later, SecurityException before
+                        opened = false;
+                    }
+                }
+            }
+            this.shallowSize = align(size);
+            this.references = fields.toArray(new Field[0]);
+            this.accessible = opened;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package co.elastic.logstash.plugins.filters;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// the slowest values an entry was evaluated on, with timeouts ranked first
+final class SlowestInputs {
+
+    static final String MATCHED = "matched";
+    static final String FAILED = "failed";
+    static final String TIMED_OUT = "timed_out";
+
+    private static final long TIMED_OUT_RANK = 1L << 62;
+
+    private final String sourceField;
+    private final int maxLength;
+    private final AtomicReferenceArray<Sample> samples;
+    // rank a value must exceed to be kept, or -1 while there are empty slots
+    private volatile long threshold = -1;
+
+    SlowestInputs(String sourceField, int size, int maxLength) {
+        this.sourceField = sourceField;
+        this.maxLength = maxLength;
+        this.samples = new AtomicReferenceArray<>(size);
+    }
+
+    void record(String text, long nanos, String outcome) {
+        long rank = outcome.equals(TIMED_OUT) ? TIMED_OUT_RANK + nanos : nanos;
+        if (rank <= threshold) {
+            return;
+        }
+        Sample sample = null;
+        // gives up after a few lost races, as other threads are then recording slower values anyway
+        for (int attempt = 0; attempt < 4; attempt++) {
+            int slot = -1;
+            Sample fastest = null;
+            for (int k = 0; k < samples.length(); k++) {
+                Sample s = samples.get(k);
+                if (s == null) {
+                    slot = k;
+                    fastest = null;
+                    break;
+                }
+                if (fastest == null || s.rank < fastest.rank) {
+                    slot = k;
+                    fastest = s;
+                }
+            }
+            if (slot < 0 || fastest != null && fastest.rank >= rank) {
+                return;
+            }
+            if (sample == null) {
+                sample = new Sample(text, maxLength, nanos, outcome, rank);
+            }
+            if (samples.compareAndSet(slot, fastest, sample)) {
+                updateThreshold();
+                return;
+            }
+        }
+    }
+
+    private void updateThreshold() {
+        long fastest = Long.MAX_VALUE;
+        for (int k = 0; k < samples.length(); k++) {
+            Sample s = samples.get(k);
+            if (s == null) {
+                return;
+            }
+            fastest = Math.min(fastest, s.rank);
+        }
+        threshold = fastest;
+    }
+
+    List<Map<String, Object>> snapshot() {
+        List<Sample> sorted = new ArrayList<>();
+        for (int k = 0; k < samples.length(); k++) {
+            Sample s = samples.get(k);
+            if (s != null) {
+                sorted.add(s);
+            }
+        }
+        sorted.sort(Comparator.comparingLong((Sample s) -> s.rank).reversed());
+        List<Map<String, Object>> snapshot = new ArrayList<>();
+        for (Sample s : sorted) {
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("nanos", s.nanos);
+            sample.put("outcome", s.outcome);
+            sample.put("length", s.length);
+            sample.put("hash", s.hash);
+            sample.put("text", s.text);
+            snapshot.add(sample);
+        }
+        return snapshot;
+    }
+
+    // tab-separated, with backslashes, tabs and line breaks escaped
+    void writeTo(Writer out) throws IOException {
+        for (Map<String, Object> sample : snapshot()) {
+            out.write(sourceField + "\t" + sample.get("nanos") + "\t" + sample.get("outcome") + "\t" +
+                    sample.get("length") + "\t" + sample.get("hash") + "\t" + escape((String) sample.get("text")) + "\n");
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int k = 0; k < text.length(); k++) {
+            char c = text.charAt(k);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Sample {
+
+        final String text;
+        final int length;
+        final String hash;
+        final long nanos;
+        final String outcome;
+        final long rank;
+
+        Sample(String text, int maxLength, long nanos, String outcome, long rank) {
+            this.text = text.length() > maxLength ? text.substring(0, maxLength) : text;
+            this.length = text.length();
+            this.hash = hash(text);
+            this.nanos = nanos;
+            this.outcome = outcome;
+            this.rank = rank;
+        }
+
+        // 64-bit FNV-1a over the chars of the full text
+        private static String hash(String text) {
+            long hash = 0xcbf29ce484222325L;
+            for (int k = 0; k < text.length(); k++) {
+                hash ^= text.charAt(k);
+                hash *= 0x100000001b3L;
+            }
+            return String.format("%016x", hash);
+        }
+    }
+}
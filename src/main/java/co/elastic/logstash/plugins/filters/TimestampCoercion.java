@@ -0,0 +1,364 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.logstash.Timestamp;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+// parses :epoch_millis and :timestamp captures, keeping those that are not a supported timestamp as strings
+final class TimestampCoercion {
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long FUTURE_TOLERANCE = 31 * MILLIS_PER_DAY;
+    private static final String[] MONTHS = {
+            "january", "february", "march", "april", "may", "june",
+            "july", "august", "september", "october", "november", "december"
+    };
+
+    // DateTimeFormatter is immutable and safe to share between workers
+    private static final DateTimeFormatter[] FORMATTERS = {
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME,
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME.withZone(ZoneOffset.UTC),
+            // DATESTAMP_RFC2822
+            DateTimeFormatter.RFC_1123_DATE_TIME,
+            // HTTPDATE with a two digit year
+            new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern("d/MMM/yy:H:mm:ss Z")
+                    .toFormatter(Locale.ENGLISH),
+            // DATESTAMP_EVENTLOG
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss", Locale.ENGLISH).withZone(ZoneOffset.UTC)
+    };
+
+    private static volatile int lastFormatter;
+    private static volatile Year currentYear = new Year(System.currentTimeMillis());
+
+    private TimestampCoercion() {
+    }
+
+    // a capture that is not a supported timestamp is left as a string, which the filter tags the event for
+    static Object coerce(byte[] bytes, int start, int end, String type) {
+        try {
+            return box(parse(bytes, start, end, System.currentTimeMillis()), type);
+        } catch (IllegalArgumentException ex) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    static Object coerce(String value, String type) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            return box(parse(bytes, 0, bytes.length, System.currentTimeMillis()), type);
+        } catch (IllegalArgumentException ex) {
+            return value;
+        }
+    }
+
+    private static Object box(long millis, String type) {
+        return type.equals("timestamp") ? new Timestamp(millis) : (Object) millis;
+    }
+
+    // throws IllegalArgumentException if the bytes are not a supported timestamp
+    static long parse(byte[] bytes, int start, int end, long nowMillis) {
+        long millis = INVALID;
+        if (end - start > 4) {
+            Cursor cursor = new Cursor(bytes, start, end);
+            if (!isDigit(bytes[start])) {
+                millis = parseSyslog(cursor, nowMillis);
+            } else if (bytes[start + 4] == '-') {
+                millis = parseIso8601(cursor);
+            } else {
+                millis = parseHttpDate(cursor);
+            }
+        }
+        return millis != INVALID ? millis : parseWithFormatters(new String(bytes, start, end - start,
+                StandardCharsets.UTF_8));
+    }
+
+    // %{YEAR}-%{MONTHNUM}-%{MONTHDAY}[T ]%{ISO8601_HOUR}:?%{MINUTE}(?::?%{SECOND})?%{ISO8601_TIMEZONE}?
+    private static long parseIso8601(Cursor c) {
+        int year = c.digits(4, 4);
+        if (!c.skip('-')) {
+            return INVALID;
+        }
+        int month = c.digits(1, 2);
+        if (!c.skip('-')) {
+            return INVALID;
+        }
+        int day = c.digits(1, 2);
+        if (!c.skip('T') && !c.skip(' ')) {
+            return INVALID;
+        }
+        int hour = c.digits(2, 2);
+        c.skip(':');
+        int minute = c.digits(2, 2);
+        int second = 0;
+        int millis = 0;
+        if (c.skip(':') || c.isDigit()) {
+            second = c.digits(1, 2);
+            millis = c.fraction();
+        }
+        int offsetMinutes = 0;
+        if (!c.atEnd() && !c.skip('Z')) {
+            offsetMinutes = c.offset(true);
+        }
+        if (!c.atEnd() || offsetMinutes == INVALID_OFFSET) {
+            return INVALID;
+        }
+        return epochMillis(year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    // %{MONTHDAY}/%{MONTH}/%{YEAR}:%{TIME} %{INT}
+    private static long parseHttpDate(Cursor c) {
+        int day = c.digits(1, 2);
+        if (!c.skip('/')) {
+            return INVALID;
+        }
+        int month = c.month();
+        if (!c.skip('/')) {
+            return INVALID;
+        }
+        int year = c.digits(4, 4);
+        if (!c.skip(':')) {
+            return INVALID;
+        }
+        int hour = c.digits(1, 2);
+        if (!c.skip(':')) {
+            return INVALID;
+        }
+        int minute = c.digits(2, 2);
+        if (!c.skip(':')) {
+            return INVALID;
+        }
+        int second = c.digits(1, 2);
+        int millis = c.fraction();
+        if (!c.skip(' ')) {
+            return INVALID;
+        }
+        int offsetMinutes = c.offset(false);
+        if (!c.atEnd() || offsetMinutes == INVALID_OFFSET) {
+            return INVALID;
+        }
+        return epochMillis(year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    // %{MONTH} +%{MONTHDAY} %{TIME}
+    private static long parseSyslog(Cursor c, long nowMillis) {
+        int month = c.month();
+        if (!c.skip(' ')) {
+            return INVALID;
+        }
+        while (c.skip(' ')) {
+            // MONTHDAY is padded with spaces
+        }
+        int day = c.digits(1, 2);
+        if (!c.skip(' ')) {
+            return INVALID;
+        }
+        int hour = c.digits(1, 2);
+        if (!c.skip(':')) {
+            return INVALID;
+        }
+        int minute = c.digits(2, 2);
+        if (!c.skip(':')) {
+            return INVALID;
+        }
+        int second = c.digits(1, 2);
+        int millis = c.fraction();
+        if (!c.atEnd()) {
+            return INVALID;
+        }
+        Year year = currentYear;
+        if (nowMillis < year.startMillis || nowMillis >= year.endMillis) {
+            year = new Year(nowMillis);
+            currentYear = year;
+        }
+        long timestamp = epochMillis(year.year, month, day, hour, minute, second, millis, 0);
+        if (timestamp == INVALID || timestamp - nowMillis > FUTURE_TOLERANCE) {
+            // a timestamp from late last year, or the 29th of February of the last leap year
+            long lastYear = epochMillis(year.year - 1, month, day, hour, minute, second, millis, 0);
+            if (lastYear != INVALID) {
+                return lastYear;
+            }
+        }
+        return timestamp;
+    }
+
+    private static long parseWithFormatters(String value) {
+        int first = lastFormatter;
+        for (int k = 0; k < FORMATTERS.length; k++) {
+            int index = (first + k) % FORMATTERS.length;
+            try {
+                long millis = Instant.from(FORMATTERS[index].parse(value)).toEpochMilli();
+                if (index != first) {
+                    lastFormatter = index;
+                }
+                return millis;
+            } catch (DateTimeParseException ex) {
+                // try the next format
+            }
+        }
+        throw new IllegalArgumentException("[" + value + "] is not a supported timestamp");
+    }
+
+    // any field out of range is negative, which makes the timestamp invalid
+    private static long epochMillis(int year, int month, int day, int hour, int minute, int second, int millis,
+                                    int offsetMinutes) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return INVALID;
+        }
+        long seconds = daysFromCivil(year, month, day) * 86_400L + hour * 3600 + minute * 60 + second
+                - offsetMinutes * 60L;
+        return seconds * 1000 + millis;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar, for years from 0
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static final class Cursor {
+
+        private final byte[] bytes;
+        private final int end;
+        private int pos;
+
+        Cursor(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+        }
+
+        boolean atEnd() {
+            return pos == end;
+        }
+
+        boolean isDigit() {
+            return pos < end && TimestampCoercion.isDigit(bytes[pos]);
+        }
+
+        boolean skip(char c) {
+            if (pos < end && bytes[pos] == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        // the value of between min and max digits, or -1
+        int digits(int min, int max) {
+            int value = 0;
+            int count = 0;
+            while (count < max && isDigit()) {
+                value = value * 10 + (bytes[pos++] - '0');
+                count++;
+            }
+            return count >= min ? value : -1;
+        }
+
+        // the milliseconds of an optional fraction of a second, truncating further digits
+        int fraction() {
+            if (!skip('.') && !skip(',')) {
+                return 0;
+            }
+            int millis = 0;
+            int count = 0;
+            for (; isDigit(); pos++, count++) {
+                if (count < 3) {
+                    millis = millis * 10 + (bytes[pos] - '0');
+                }
+            }
+            if (count == 0) {
+                return -1;
+            }
+            for (; count < 3; count++) {
+                millis *= 10;
+            }
+            return millis;
+        }
+
+        // [+-]HH(:?MM)? for ISO8601 or [+-]?HHMM for HTTPDATE, in minutes east of UTC
+        int offset(boolean iso8601) {
+            boolean negative = skip('-');
+            if (!negative && !skip('+') && iso8601) {
+                return INVALID_OFFSET;
+            }
+            int hours = digits(2, 2);
+            int minutes = 0;
+            if (iso8601) {
+                skip(':');
+                if (!atEnd()) {
+                    minutes = digits(2, 2);
+                }
+            } else {
+                minutes = digits(2, 2);
+            }
+            if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59) {
+                return INVALID_OFFSET;
+            }
+            int offset = hours * 60 + minutes;
+            return negative ? -offset : offset;
+        }
+
+        // an English month name or its first three letters, in any case, as 1 to 12, or -1
+        int month() {
+            int start = pos;
+            while (pos < end && ((bytes[pos] | 0x20) >= 'a' && (bytes[pos] | 0x20) <= 'z')) {
+                pos++;
+            }
+            int length = pos - start;
+            if (length < 3) {
+                return -1;
+            }
+            for (int m = 0; m < MONTHS.length; m++) {
+                String name = MONTHS[m];
+                if (length == 3 || length == name.length()) {
+                    int k = 0;
+                    while (k < length && k < name.length() && (bytes[start + k] | 0x20) == name.charAt(k)) {
+                        k++;
+                    }
+                    if (k == length) {
+                        return m + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    // the bounds of the year of the time it was created for, in UTC
+    private static final class Year {
+
+        final int year;
+        final long startMillis;
+        final long endMillis;
+
+        Year(long nowMillis) {
+            this.year = Instant.ofEpochMilli(nowMillis).atOffset(ZoneOffset.UTC).getYear();
+            this.startMillis = daysFromCivil(year, 1, 1) * MILLIS_PER_DAY;
+            this.endMillis = daysFromCivil(year + 1, 1, 1) * MILLIS_PER_DAY;
+        }
+    }
+}
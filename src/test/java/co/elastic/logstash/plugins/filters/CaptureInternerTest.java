@@ -0,0 +1,97 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CaptureInternerTest {
+
+    @Test
+    public void testByteRangesAndStringsShareInstances() {
+        CaptureInterner interner = new CaptureInterner();
+        byte[] line = "GET /index.html HTTP/1.1 GET".getBytes(StandardCharsets.UTF_8);
+        String get = interner.intern(line, 0, 3);
+        Assert.assertEquals("GET", get);
+        Assert.assertSame(get, interner.intern(line, 25, 28));
+        Assert.assertSame(get, interner.intern(new String("GET")));
+        Assert.assertEquals("HTTP/1.1", interner.intern(line, 16, 24));
+        Assert.assertEquals("", interner.intern(line, 3, 3));
+
+        byte[] accented = "verb=PÜT".getBytes(StandardCharsets.UTF_8);
+        String put = interner.intern(accented, 5, accented.length);
+        Assert.assertEquals("PÜT", put);
+        Assert.assertSame(put, interner.intern(accented, 5, accented.length));
+        Assert.assertFalse(interner.saturated());
+    }
+
+    @Test
+    public void testNonAsciiValues() {
+        CaptureInterner interner = new CaptureInterner();
+        for (String value : new String[]{"\u00fcber", "\u2192", "\ud83d\ude00"}) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            String fromString = interner.intern(new String(value));
+            Assert.assertSame(value, fromString, interner.intern(bytes, 0, bytes.length));
+            Assert.assertSame(value, fromString, interner.intern(new String(value)));
+        }
+
+        // the length limit applies to the UTF-8 encoding from both sides
+        StringBuilder builder = new StringBuilder();
+        for (int k = 0; k < CaptureInterner.MAX_LENGTH / 2 + 1; k++) {
+            builder.append('\u00e9');
+        }
+        String longValue = builder.toString();
+        byte[] bytes = longValue.getBytes(StandardCharsets.UTF_8);
+        Assert.assertNotSame(interner.intern(new String(longValue)), interner.intern(new String(longValue)));
+        Assert.assertNotSame(interner.intern(bytes, 0, bytes.length), interner.intern(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testHighCardinalityStopsInterning() {
+        CaptureInterner interner = new CaptureInterner();
+        for (int k = 0; k < CaptureInterner.MAX_VALUES; k++) {
+            interner.intern("value" + k);
+        }
+        Assert.assertFalse(interner.saturated());
+        String value = new String("value0");
+        Assert.assertNotSame(value, interner.intern(value));
+
+        Assert.assertEquals("one too many", interner.intern("one too many"));
+        Assert.assertTrue(interner.saturated());
+        value = new String("value0");
+        Assert.assertSame(value, interner.intern(value));
+    }
+
+    @Test
+    public void testConcurrentInterning() throws InterruptedException {
+        CaptureInterner interner = new CaptureInterner();
+        ConcurrentHashMap<String, String> canonical = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        List<AssertionError> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int n = 0; n < 10000; n++) {
+                    byte[] bytes = ("level" + (n % 10)).getBytes(StandardCharsets.UTF_8);
+                    String value = interner.intern(bytes, 0, bytes.length);
+                    if (canonical.putIfAbsent(value, value) != null && canonical.get(value) != value) {
+                        synchronized (failures) {
+                            failures.add(new AssertionError("two instances of " + value));
+                        }
+                        return;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), failures);
+        Assert.assertEquals(10, canonical.size());
+    }
+}
@@ -0,0 +1,151 @@
+package co.elastic.logstash.plugins.filters;
+
+import co.elastic.logstash.api.Event;
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+
+// Measures how throughput scales with the number of threads sharing one filter and one grok matcher.
+// Run with gradle contentionBenchmark -PbenchmarkArgs="<max threads> <seconds per run>".
+public class ContentionBenchmark {
+
+    private static final String LOG_LINE =
+            "Mar 16 00:01:25 evita postfix/smtpd[1713]: connect from camomile.cloud9.net[168.100.1.3]";
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        long runMillis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 3000;
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{SYSLOGLINE}"));
+        Jgrok jgrok = new Jgrok("benchmark", new ConfigurationImpl(config), new ContextImpl(null));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Grok watchedGrok = new Grok(Grok.getBuiltinPatterns(), "%{SYSLOGLINE}",
+                ThreadWatchdog.newInstance(2500, 5000, () -> System.nanoTime() / 1_000_000,
+                        (delay, command) -> scheduler.schedule(command, delay, TimeUnit.MILLISECONDS)));
+        Grok deadlineGrok = new Grok(Grok.getBuiltinPatterns(), "%{SYSLOGLINE}",
+                DeadlineWatchdog.newInstance(2500, 5000));
+        Grok unwatchedGrok = new Grok(Grok.getBuiltinPatterns(), "%{SYSLOGLINE}", ThreadWatchdog.noop());
+
+        Map<String, Supplier<Runnable>> scenarios = new LinkedHashMap<>();
+        scenarios.put("Jgrok.filter", () -> {
+            Event e = new org.logstash.Event();
+            e.setField("message", LOG_LINE);
+            List<Event> events = Collections.singletonList(e);
+            return () -> jgrok.filter(events, event -> { });
+        });
+        scenarios.put("Grok.captures with watchdog", () -> () -> watchedGrok.captures(LOG_LINE));
+        scenarios.put("Grok.captures with deadline slots", () -> () -> deadlineGrok.captures(LOG_LINE));
+        scenarios.put("Grok.captures without watchdog", () -> () -> unwatchedGrok.captures(LOG_LINE));
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean.isThreadContentionMonitoringSupported()) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        System.out.printf("%-32s %7s %12s %10s %12s %12s %8s%n",
+                "scenario", "threads", "ops/s", "scaling", "blocked ms", "waited ms", "cpu %");
+        for (Map.Entry<String, Supplier<Runnable>> scenario : scenarios.entrySet()) {
+            // the first run warms up the JIT and is not reported
+            run(scenario.getValue(), 1, runMillis, threadBean);
+            double singleThreaded = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                Result result = run(scenario.getValue(), threads, runMillis, threadBean);
+                if (threads == 1) {
+                    singleThreaded = result.opsPerSecond;
+                }
+                System.out.printf("%-32s %7d %12.0f %9.0f%% %12d %12d %7.0f%%%n", scenario.getKey(), threads,
+                        result.opsPerSecond, 100 * result.opsPerSecond / (threads * singleThreaded),
+                        result.blockedMillis, result.waitedMillis, 100.0 * result.cpuNanos / (threads * result.wallNanos));
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Result run(Supplier<Runnable> scenario, int threadCount, long runMillis, ThreadMXBean threadBean)
+            throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+        long[] ops = new long[threadCount];
+        long[] cpuNanos = new long[threadCount];
+        long[] blockedMillis = new long[threadCount];
+        long[] waitedMillis = new long[threadCount];
+        long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int index = t;
+            Runnable operation = scenario.get();
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    long id = Thread.currentThread().getId();
+                    ThreadInfo before = threadBean.getThreadInfo(id);
+                    long cpuBefore = threadBean.getCurrentThreadCpuTime();
+                    long count = 0;
+                    while (System.nanoTime() < deadline[0]) {
+                        for (int k = 0; k < 100; k++) {
+                            operation.run();
+                        }
+                        count += 100;
+                    }
+                    ThreadInfo after = threadBean.getThreadInfo(id);
+                    ops[index] = count;
+                    cpuNanos[index] = threadBean.getCurrentThreadCpuTime() - cpuBefore;
+                    blockedMillis[index] = after.getBlockedTime() - before.getBlockedTime();
+                    waitedMillis[index] = after.getWaitedTime() - before.getWaitedTime();
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }, "benchmark-worker-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        deadline[0] = start + runMillis * 1_000_000L;
+        barrier.await();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Result result = new Result();
+        result.wallNanos = System.nanoTime() - start;
+        long totalOps = 0;
+        for (int t = 0; t < threadCount; t++) {
+            totalOps += ops[t];
+            result.cpuNanos += cpuNanos[t];
+            result.blockedMillis += blockedMillis[t];
+            result.waitedMillis += waitedMillis[t];
+        }
+        result.opsPerSecond = totalOps * 1e9 / result.wallNanos;
+        return result;
+    }
+
+    private static class Result {
+        double opsPerSecond;
+        long wallNanos;
+        long cpuNanos;
+        long blockedMillis;
+        long waitedMillis;
+    }
+}
@@ -0,0 +1,79 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DeadlineWatchdogTest {
+
+    // backtracks for far longer than the timeout in joni
+    private static final String PATTERN = "%{BACULA_LOG_DIFF_FS}";
+    private static final String TEXT = "83.149.9.216 - - [24/Feb/2015:22:12:43 +0000] \"GET " +
+            "/presentations/logstash-monitorama-2013/images/kibana-search.png HTTP/1.1\" 200 203023 " +
+            "\"http://semicomplete.com/presentations/logstash-monitorama-2013/\"";
+
+    @Test
+    public void testInterruptsLongRunningMatch() {
+        Grok grok = new Grok(Grok.getBuiltinPatterns(), PATTERN, DeadlineWatchdog.newInstance(10, 50));
+        long start = System.nanoTime();
+        try {
+            grok.captures(TEXT);
+            Assert.fail("expected the match to time out");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("grok pattern matching was interrupted after [50] ms", e.getMessage());
+        }
+        Assert.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testNoTimeout() {
+        Assert.assertFalse(DeadlineWatchdog.newInstance(10, 0) instanceof DeadlineWatchdog);
+        Assert.assertFalse(DeadlineWatchdog.newInstance(10, -1) instanceof DeadlineWatchdog);
+    }
+
+    @Test
+    public void testIntervalGrowsBackOnceWatchdogIsUnused() throws InterruptedException {
+        ThreadWatchdog watchdog = DeadlineWatchdog.newInstance(1, 1000);
+        Assert.assertEquals(1, DeadlineWatchdog.checkIntervalMillis());
+        watchdog = null;
+        long end = System.nanoTime() + 10_000_000_000L;
+        while (DeadlineWatchdog.checkIntervalMillis() == 1 && System.nanoTime() < end) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(DeadlineWatchdog.checkIntervalMillis() > 1);
+    }
+
+    @Test
+    public void testQuickMatchesAreNotInterrupted() throws InterruptedException {
+        ThreadWatchdog watchdog = DeadlineWatchdog.newInstance(1, 1000);
+        Grok grok = new Grok(Grok.getBuiltinPatterns(), "%{WORD:word} %{INT:n}", watchdog);
+        List<Thread> threads = new ArrayList<>();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                long end = System.nanoTime() + 200_000_000L;
+                while (System.nanoTime() < end) {
+                    try {
+                        grok.captures("abc 42");
+                    } catch (RuntimeException e) {
+                        failures.add(e.getMessage());
+                        return;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), failures);
+    }
+}
@@ -0,0 +1,84 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// differential tests of the delimiter tokenizer against the regex path
+public class DissectPatternTest {
+
+    private static final String[] FRAGMENTS = {
+            "a", "bc", "123", " ", "  ", "|", "||", ",", ", ", ":", ": ", "=", "user=", "id=", "\t", "\n", "x y", "é"
+    };
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "%{DATA:a} %{DATA:b} %{GREEDYDATA:c}",
+            "%{DATA:a}\\|%{DATA:b}\\|%{DATA:c}",
+            "%{DATA:a},%{DATA:b}",
+            "user=%{DATA:user} id=%{DATA:id}, %{GREEDYDATA:rest}",
+            "%{DATA:a}: %{DATA}: %{DATA:b}",
+            "id=%{GREEDYDATA:id}",
+            "%{DATA:a}=%{DATA:b}");
+
+    @Test
+    public void testDifferentialAgainstRegex() {
+        Random random = new Random(42);
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        for (String pattern : PATTERNS) {
+            DissectPattern tokenizer = DissectPattern.compile(Collections.singletonList(pattern), patternBank);
+            Assert.assertNotNull("expected tokenizer for " + pattern, tokenizer);
+            Grok grok = new Grok(patternBank, pattern);
+
+            int decided = 0;
+            for (int k = 0; k < 20000; k++) {
+                StringBuilder text = new StringBuilder();
+                int fragments = random.nextInt(10);
+                for (int f = 0; f < fragments; f++) {
+                    text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                Map<String, Object> captures = tokenizer.captures(text.toString());
+                if (captures != PatternMatcher.UNDECIDED) {
+                    decided++;
+                    Assert.assertEquals(pattern + " on '" + text + "'", grok.captures(text.toString()), captures);
+                }
+            }
+            Assert.assertTrue(decided > 0);
+        }
+    }
+
+    @Test
+    public void testUserDefinedPatternsAreInlined() {
+        Map<String, String> patternBank = new HashMap<>(Grok.getBuiltinPatterns());
+        patternBank.put("PIPE_FIELDS", "%{DATA:a}\\|%{DATA:b:int}\\|%{GREEDYDATA:c}");
+        DissectPattern tokenizer = DissectPattern.compile(Collections.singletonList("%{PIPE_FIELDS}"), patternBank);
+        Assert.assertNotNull(tokenizer);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("a", "x");
+        expected.put("b", 42);
+        expected.put("c", "y|z");
+        Assert.assertEquals(expected, tokenizer.captures("x|42|y|z"));
+    }
+
+    @Test
+    public void testIneligiblePatterns() {
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("%{GREEDYDATA:a} %{DATA:b}"), patternBank));
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("%{DATA:a}%{DATA:b}"), patternBank));
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("%{DATA:a} %{WORD:b}"), patternBank));
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("%{DATA:a}|%{DATA:b}"), patternBank));
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("no captures"), patternBank));
+        Assert.assertNull(DissectPattern.compile(Arrays.asList("%{DATA:a} x", "%{DATA:a} y"), patternBank));
+
+        Map<String, String> redefined = new HashMap<>(patternBank);
+        redefined.put("DATA", "[^ ]*");
+        Assert.assertNull(DissectPattern.compile(Collections.singletonList("%{DATA:a} %{DATA:b}"), redefined));
+    }
+}
@@ -0,0 +1,87 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.logstash.plugins.ConfigurationImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.TAG_ON_TIMEOUT;
+
+public class GrokCorpusTest {
+
+    @Test
+    public void testRecordAndReplay() throws IOException {
+        String log = String.join("\n",
+                "GET /index.html 200", "skipped", "POST /form 404", "skipped", "unmatched", "skipped", "héllo wörld");
+        Path corpus = Files.createTempFile("grok-corpus", ".bin");
+        try {
+            Assert.assertEquals(4, GrokCorpus.record(new BufferedReader(new StringReader(log)), corpus, 2));
+            Assert.assertEquals(4 * 4 + "GET /index.html 200POST /form 404unmatchedhéllo wörld".getBytes("UTF-8").length,
+                    Files.size(corpus));
+
+            Map<String, Object> config = new HashMap<>();
+            config.put(MATCH.name(), Collections.singletonMap("message",
+                    Arrays.asList("%{WORD:verb} %{URIPATH:path} 200", "%{WORD:verb} %{URIPATH:path}", "%{NOTSPACE:a} %{NOTSPACE:b}")));
+            GrokCorpus.Report report = GrokCorpus.replay(corpus, new ConfigurationImpl(config), 1, 3);
+
+            Assert.assertEquals(12, report.events);
+            Assert.assertEquals(9, report.matched);
+            Assert.assertEquals(0, report.timeouts);
+            Assert.assertTrue(report.countsTimeouts);
+            Assert.assertEquals(12, report.latencies.length);
+            Assert.assertTrue(report.percentile(50) <= report.percentile(99));
+            Assert.assertArrayEquals(new long[]{1, 1, 1}, report.hits[0]);
+            Assert.assertTrue(report.toString().contains("alternative 2: 1 hits (25.00%)"));
+
+            // windows smaller than a value are remapped at the value
+            GrokCorpus.Report chunked = GrokCorpus.replay(corpus, new ConfigurationImpl(config), 0, 1, 8);
+            Assert.assertEquals(4, chunked.events);
+            Assert.assertEquals(3, chunked.matched);
+            Assert.assertArrayEquals(new long[]{1, 1, 1}, chunked.hits[0]);
+
+            // without a timeout tag timeouts cannot be told apart from failures
+            config.put(TAG_ON_TIMEOUT.name(), "");
+            GrokCorpus.Report untagged = GrokCorpus.replay(corpus, new ConfigurationImpl(config), 0, 1);
+            Assert.assertFalse(untagged.countsTimeouts);
+            Assert.assertTrue(untagged.toString().contains("timeouts: not counted"));
+        } finally {
+            Files.delete(corpus);
+        }
+    }
+
+    @Test
+    public void testCorruptCorpus() throws IOException {
+        Path corpus = Files.createTempFile("grok-corpus", ".bin");
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{WORD:verb}"));
+        try {
+            for (byte[] bytes : new byte[][]{{0, 0, 0, 2, 'o', 'k', -1, -1, -1, -1}, {0, 0, 0, 9, 'x'}, {0, 0, 0, 1, 'x', 0}}) {
+                Files.write(corpus, bytes);
+                try {
+                    GrokCorpus.replay(corpus, new ConfigurationImpl(config), 0, 1);
+                    Assert.fail("Expected the corpus to be rejected");
+                } catch (IOException ex) {
+                    Assert.assertTrue(ex.getMessage(), ex.getMessage().contains(corpus.toString()));
+                }
+            }
+        } finally {
+            Files.delete(corpus);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleRate() throws IOException {
+        GrokCorpus.record(new BufferedReader(new StringReader("line")), Paths.get("unused"), 0);
+    }
+}
@@ -0,0 +1,117 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// differential tests of the intrinsic matchers against the regex path
+public class IntrinsicPatternTest {
+
+    private static final String[] FRAGMENTS = {
+            "127.0.0.1", "255.", "256", "0", "1", "12", "123", "1234", "99999", ".", ":", "::", " ", "  ", "-", "+",
+            "/", ",", "_", "\t", "\u000b", "[", "]", "x", "abc", "Dec", "Jan", "Sept", "2013", "13", "T", "Z",
+            "11/Dec/2013:00:01:45 -0800", "1/Jan/13:5:07:60,5 +1", "2009-06-30T18:30:00+02:00", "2009-06-30 18:30",
+            "2016-1-2T0130", "2009-06-30T24:30", ":5.123", "+05", "+2300", "-123", "ERROR", "Warning", "warn",
+            "Warnings", "Emergency", "EMERG", "err", "fe80::1", "::1", "a:", "http", "id="
+    };
+
+    private static final List<List<String>> PATTERNS = Arrays.asList(
+            Collections.singletonList("%{IP:client} %{WORD:method} %{NUMBER:bytes:int} %{NUMBER:duration:float}"),
+            Collections.singletonList("%{IPV4:ip}"),
+            Collections.singletonList("%{IP:ip}"),
+            Collections.singletonList("%{INT:a},%{INT:b}"),
+            Collections.singletonList("%{INT:i}"),
+            Collections.singletonList("%{NUMBER:n}"),
+            Collections.singletonList("%{NUMBER:a}\\.%{WORD:b}"),
+            Collections.singletonList("%{WORD:w}"),
+            Collections.singletonList("%{NOTSPACE:a} %{NOTSPACE:b}"),
+            Collections.singletonList("%{LOGLEVEL:level}: %{WORD:w}"),
+            Collections.singletonList("%{LOGLEVEL:level}"),
+            Collections.singletonList("\\[%{HTTPDATE:ts}\\] %{INT:x}"),
+            Collections.singletonList("%{HTTPDATE:ts}"),
+            Collections.singletonList("%{TIMESTAMP_ISO8601:ts} %{LOGLEVEL:level}"),
+            Collections.singletonList("%{TIMESTAMP_ISO8601:ts}"),
+            Collections.singletonList("id=%{INT:id} %{NOTSPACE:rest}"),
+            Arrays.asList("%{INT:a} x", "%{WORD:b} Z", "%{IP:a}/"));
+
+    @Test
+    public void testDifferentialAgainstRegex() {
+        Random random = new Random(42);
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        for (List<String> patterns : PATTERNS) {
+            IntrinsicPattern intrinsic = IntrinsicPattern.compile(patterns, patternBank);
+            Assert.assertNotNull("expected intrinsic for " + patterns, intrinsic);
+            Grok grok = new Grok(patternBank, Jgrok.combinePatterns(patterns));
+
+            int decided = 0;
+            for (int k = 0; k < 20000; k++) {
+                StringBuilder text = new StringBuilder();
+                int fragments = 1 + random.nextInt(6);
+                for (int f = 0; f < fragments; f++) {
+                    text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                Map<String, Object> captures = intrinsic.captures(text.toString());
+                if (captures != PatternMatcher.UNDECIDED) {
+                    decided++;
+                    Assert.assertEquals(patterns + " on '" + text + "'", grok.captures(text.toString()), captures);
+                }
+            }
+            Assert.assertTrue(decided > 0);
+        }
+    }
+
+    @Test
+    public void testKnownLines() {
+        assertSameAsRegex("%{IP:client} %{WORD:method} %{NUMBER:bytes} %{NUMBER:duration}", "55.3.244.1 GET 15824 0.043");
+        assertSameAsRegex("\\[%{HTTPDATE:timestamp}\\]", "127.0.0.1 - - [11/Dec/2013:00:01:45 -0800] \"GET\"");
+        assertSameAsRegex("%{TIMESTAMP_ISO8601:ts} %{LOGLEVEL:level} ", "2019-01-24T11:28:00.123Z WARN foo");
+        assertSameAsRegex("%{LOGLEVEL:level}: error!", "Critical: error!");
+        assertSameAsRegex("%{NUMBER:foo:int} %{NUMBER:bar:float}", "400 454.33");
+    }
+
+    @Test
+    public void testFallsBackForNonAsciiAndIpv6() {
+        IntrinsicPattern intrinsic = IntrinsicPattern.compile(Collections.singletonList("%{IP:ip} %{WORD:w}"), Grok.getBuiltinPatterns());
+        Assert.assertSame(PatternMatcher.UNDECIDED, intrinsic.captures("fe80::1 hello"));
+        Assert.assertSame(PatternMatcher.UNDECIDED, intrinsic.captures("10.0.0.1 héllo"));
+        Assert.assertEquals(Collections.singletonMap("w", "hello"), withoutIp(intrinsic.captures("10.0.0.1 hello")));
+    }
+
+    @Test
+    public void testIneligiblePatterns() {
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{INT:a}5"), patternBank));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{NOTSPACE:a}\\]"), patternBank));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{WORD:a}%{WORD:b}"), patternBank));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{URIPATHPARAM:request}"), patternBank));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{WORD:a} %{INT:a}"), patternBank));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("^%{WORD:a}"), patternBank));
+
+        Map<String, String> redefined = new HashMap<>(patternBank);
+        redefined.put("INT", "[0-9]+");
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{INT:a}"), redefined));
+        Assert.assertNull(IntrinsicPattern.compile(Collections.singletonList("%{HTTPDATE:a}"), redefined));
+    }
+
+    private static void assertSameAsRegex(String pattern, String text) {
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        IntrinsicPattern intrinsic = IntrinsicPattern.compile(Collections.singletonList(pattern), patternBank);
+        Assert.assertNotNull(intrinsic);
+        Map<String, Object> captures = intrinsic.captures(text);
+        Assert.assertNotNull(captures);
+        Assert.assertEquals(new Grok(patternBank, pattern).captures(text), captures);
+    }
+
+    private static Map<String, Object> withoutIp(Map<String, Object> captures) {
+        Map<String, Object> copy = new HashMap<>(captures);
+        Assert.assertEquals("10.0.0.1", copy.remove("ip"));
+        return copy;
+    }
+}
@@ -13,21 +13,45 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static co.elastic.logstash.plugins.filters.Jgrok.BATCH_MATCHING;
 import static co.elastic.logstash.plugins.filters.Jgrok.BREAK_ON_MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.COVERAGE_REPORT_INTERVAL;
+import static co.elastic.logstash.plugins.filters.Jgrok.COVERAGE_SAMPLE_RATE;
+import static co.elastic.logstash.plugins.filters.Jgrok.DISSECT_TOKENIZER;
+import static co.elastic.logstash.plugins.filters.Jgrok.ENTRY_ORDER;
+import static co.elastic.logstash.plugins.filters.Jgrok.ESSENTIAL_ENTRIES;
+import static co.elastic.logstash.plugins.filters.Jgrok.INTERN_CAPTURES;
+import static co.elastic.logstash.plugins.filters.Jgrok.INTRINSIC_MATCHERS;
 import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH_BY;
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH_FLAG;
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH_ONLY;
+import static co.elastic.logstash.plugins.filters.Jgrok.MEMORY_BUDGET_MB;
+import static co.elastic.logstash.plugins.filters.Jgrok.OVERLOAD_LATENCY_MICROS;
 import static co.elastic.logstash.plugins.filters.Jgrok.OVERWRITE;
 import static co.elastic.logstash.plugins.filters.Jgrok.PATTERNS_DIR;
 import static co.elastic.logstash.plugins.filters.Jgrok.PATTERNS_FILES_GLOB;
 import static co.elastic.logstash.plugins.filters.Jgrok.PATTERN_DEFINITIONS;
+import static co.elastic.logstash.plugins.filters.Jgrok.PROFILE_SAMPLE_RATE;
+import static co.elastic.logstash.plugins.filters.Jgrok.PROFILE_TARGET;
+import static co.elastic.logstash.plugins.filters.Jgrok.RAW_SOURCE_BYTES;
+import static co.elastic.logstash.plugins.filters.Jgrok.ROUTES;
+import static co.elastic.logstash.plugins.filters.Jgrok.SLOWEST_INPUTS;
 import static co.elastic.logstash.plugins.filters.Jgrok.TAG_ON_FAILURE;
+import static co.elastic.logstash.plugins.filters.Jgrok.TAG_ON_MATCH;
 import static co.elastic.logstash.plugins.filters.Jgrok.TIMEOUT_MILLIS;
+import static co.elastic.logstash.plugins.filters.Jgrok.WARMUP_ITERATIONS;
+import static co.elastic.logstash.plugins.filters.Jgrok.WARMUP_SAMPLES;
 
 public class JgrokTest {
 
@@ -175,6 +199,348 @@ public class JgrokTest {
         assertDoesNotHaveTag(e1, "_grokparsefailure");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSlowestInputs() throws IOException {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{IP:client} %{WORD:method}"));
+        config.put(SLOWEST_INPUTS.name(), 2L);
+        // the warm-up sample would be the slowest value as it runs on cold code
+        config.put(WARMUP_SAMPLES.name(), Collections.singletonList("warm-up"));
+        config.put(WARMUP_ITERATIONS.name(), 1L);
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+        List<Event> events = new ArrayList<>();
+        for (String message : Arrays.asList(SIMPLE_LOG_LINE, "unmatched", "1.2.3.4 GET", "abc")) {
+            Event e = new org.logstash.Event();
+            e.setField("message", message);
+            events.add(e);
+        }
+        jgrok.filter(events, new TestFilterMatchListener());
+
+        List<Map<String, Object>> slowest = (List<Map<String, Object>>) jgrok.getSlowestInputs().get("message");
+        Assert.assertEquals(2, slowest.size());
+        Assert.assertTrue((Long) slowest.get(0).get("nanos") >= (Long) slowest.get(1).get("nanos"));
+        for (Map<String, Object> input : slowest) {
+            Assert.assertNotEquals("warm-up", input.get("text"));
+        }
+
+        Path file = Files.createTempFile("slowest", ".tsv");
+        try {
+            jgrok.dumpSlowestInputs(file);
+            List<String> lines = Files.readAllLines(file);
+            Assert.assertEquals(2, lines.size());
+            Assert.assertTrue(lines.get(0).startsWith("message\t" + slowest.get(0).get("nanos") + "\t"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEntryOrder() {
+        Map<String, Object> match = new LinkedHashMap<>();
+        match.put("address", "%{IP:ip}");
+        match.put("name", "%{WORD:word}");
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        config.put(WARMUP_SAMPLES.name(), Arrays.asList("alpha", "beta"));
+        config.put(WARMUP_ITERATIONS.name(), 10L);
+
+        Jgrok declared = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+        Assert.assertEquals(Arrays.asList("address", "name"), declared.getEntryOrder());
+
+        // the address entry never matched during the warm-up, so it is tried last
+        config.put(ENTRY_ORDER.name(), "cost");
+        Jgrok planned = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+        Assert.assertEquals(Arrays.asList("name", "address"), planned.getEntryOrder());
+
+        Event e = new org.logstash.Event();
+        e.setField("address", "10.0.0.1");
+        e.setField("name", "gamma");
+        planned.filter(Collections.singletonList(e), new TestFilterMatchListener());
+        Assert.assertEquals("gamma", e.getField("word"));
+        Assert.assertNull(e.getField("ip"));
+
+        config.put(ENTRY_ORDER.name(), "fastest");
+        try {
+            new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+            Assert.fail("Expected an invalid entry order to be rejected");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage().contains("fastest"));
+        }
+    }
+
+    @Test
+    public void testLoadShedding() {
+        Map<String, Object> match = new LinkedHashMap<>();
+        match.put("message", "%{IP:client} %{WORD:method}");
+        match.put("agent", "%{WORD:browser}");
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        config.put(OVERLOAD_LATENCY_MICROS.name(), 1L);
+        config.put(ESSENTIAL_ENTRIES.name(), Collections.singletonList("agent"));
+        long[] step = {TimeUnit.SECONDS.toNanos(1)};
+        Jgrok jgrok = sheddingJgrok(config, step);
+
+        // every reading of the clock advances it by a second, so the first batch closes an overloaded window
+        jgrok.filter(Collections.singletonList(sheddingEvent()), new TestFilterMatchListener());
+        step[0] = 0;
+        Assert.assertEquals(LoadShedder.ESSENTIAL, jgrok.getOverloadLevel());
+
+        // the message entry comes first and is skipped, so the event lost its captures
+        Event essential = sheddingEvent();
+        TestFilterMatchListener matchListener = new TestFilterMatchListener();
+        jgrok.filter(Collections.singletonList(essential), matchListener);
+        Assert.assertEquals("Mozilla", essential.getField("browser"));
+        Assert.assertNull(essential.getField("client"));
+        Assert.assertEquals(1, matchListener.matchCount());
+        assertHasTag(essential, "_grokshed");
+
+        Event shed = sheddingEvent();
+        shed.setField("agent", "-");
+        jgrok.filter(Collections.singletonList(shed), new TestFilterMatchListener());
+        Assert.assertNull(shed.getField("client"));
+        assertHasTag(shed, "_grokshed");
+
+        // an essential entry that matches first leaves nothing for the full level to add
+        match.clear();
+        match.put("agent", "%{WORD:browser}");
+        match.put("message", "%{IP:client} %{WORD:method}");
+        step[0] = TimeUnit.SECONDS.toNanos(1);
+        jgrok = sheddingJgrok(config, step);
+        jgrok.filter(Collections.singletonList(sheddingEvent()), new TestFilterMatchListener());
+        step[0] = 0;
+        Event complete = sheddingEvent();
+        jgrok.filter(Collections.singletonList(complete), new TestFilterMatchListener());
+        Assert.assertEquals("Mozilla", complete.getField("browser"));
+        assertNoTags(complete);
+
+        // without break_on_match every entry would have been evaluated
+        config.put(BREAK_ON_MATCH.name(), false);
+        step[0] = TimeUnit.SECONDS.toNanos(1);
+        jgrok = sheddingJgrok(config, step);
+        jgrok.filter(Collections.singletonList(sheddingEvent()), new TestFilterMatchListener());
+        step[0] = 0;
+        Event partial = sheddingEvent();
+        jgrok.filter(Collections.singletonList(partial), new TestFilterMatchListener());
+        Assert.assertEquals("Mozilla", partial.getField("browser"));
+        assertHasTag(partial, "_grokshed");
+    }
+
+    @Test
+    public void testWarmUpDoesNotShed() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{IP:client} %{WORD:method}"));
+        config.put(OVERLOAD_LATENCY_MICROS.name(), 1L);
+        config.put(WARMUP_SAMPLES.name(), Collections.singletonList("55.3.244.1 GET"));
+        config.put(WARMUP_ITERATIONS.name(), 3L);
+        // every warm-up batch would close an overloaded window
+        Jgrok jgrok = sheddingJgrok(config, new long[]{TimeUnit.SECONDS.toNanos(1)});
+        Assert.assertEquals(LoadShedder.FULL, jgrok.getOverloadLevel());
+    }
+
+    private static Jgrok sheddingJgrok(Map<String, Object> config, long[] step) {
+        long[] now = {0};
+        return new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null), () -> now[0] += step[0]);
+    }
+
+    private static Event sheddingEvent() {
+        Event e = new org.logstash.Event();
+        e.setField("message", "55.3.244.1 GET");
+        e.setField("agent", "Mozilla");
+        return e;
+    }
+
+    @Test
+    public void testRawSourceBytes() {
+        Map<String, Object> match = new HashMap<>();
+        match.put("message", "%{WORD:verb} %{NOTSPACE:path} %{INT:status:int} %{NUMBER:took:float}");
+        match.put("user", "%{USERNAME:login}");
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        config.put(MATCH_ONLY.name(), Collections.singletonList("user"));
+        config.put(INTRINSIC_MATCHERS.name(), false);
+        config.put(DISSECT_TOKENIZER.name(), false);
+        config.put(OVERWRITE.name(), Collections.singletonList("verb"));
+
+        for (boolean batch : new boolean[]{false, true}) {
+            config.put(BATCH_MATCHING.name(), batch);
+            List<Event> expected = rawSourceEvents();
+            config.put(RAW_SOURCE_BYTES.name(), false);
+            new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null))
+                    .filter(expected, new TestFilterMatchListener());
+            List<Event> actual = rawSourceEvents();
+            config.put(RAW_SOURCE_BYTES.name(), true);
+            new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null))
+                    .filter(actual, new TestFilterMatchListener());
+            for (int k = 0; k < expected.size(); k++) {
+                Assert.assertEquals(((org.logstash.Event) expected.get(k)).getData(),
+                        ((org.logstash.Event) actual.get(k)).getData());
+            }
+        }
+    }
+
+    @Test
+    public void testTimestampCaptures() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message",
+                "\\[%{HTTPDATE:received:epoch_millis}\\] %{TIMESTAMP_ISO8601:sent:timestamp} %{WORD:verb}"));
+        for (boolean intrinsic : new boolean[]{false, true}) {
+            for (boolean raw : new boolean[]{false, true}) {
+                config.put(INTRINSIC_MATCHERS.name(), intrinsic);
+                config.put(RAW_SOURCE_BYTES.name(), raw);
+                Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+                Event e = new org.logstash.Event();
+                e.setField("message", "[03/Feb/2019:04:05:06 -0700] 2019-02-03T11:05:05.5Z GET");
+                Collection<Event> results = jgrok.filter(Collections.singletonList(e), new TestFilterMatchListener());
+
+                Assert.assertEquals(1, results.size());
+                Assert.assertEquals(1549191906000L, e.getField("received"));
+                Assert.assertEquals(new org.logstash.Timestamp(1549191905500L), e.getField("sent"));
+                Assert.assertEquals("GET", e.getField("verb"));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnparsedTimestampCaptures() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message",
+                "%{TIMESTAMP_ISO8601:sent:timestamp} %{GREEDYDATA:note:timestamp}"));
+        String valid = "2019-02-03T11:05:05.5Z";
+        for (boolean intrinsic : new boolean[]{false, true}) {
+            config.put(INTRINSIC_MATCHERS.name(), intrinsic);
+            Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+            for (boolean batch : new boolean[]{false, true}) {
+                List<Event> events = new ArrayList<>();
+                // a leap second, a two digit year and a capture that is no timestamp at all
+                for (String message : Arrays.asList("2019-02-03T11:05:60Z " + valid, "19-02-03T11:05:00Z " + valid,
+                        valid + " soon", valid + " " + valid)) {
+                    Event e = new org.logstash.Event();
+                    e.setField("message", message);
+                    events.add(e);
+                }
+                Event list = new org.logstash.Event();
+                list.setField("message", Arrays.asList(valid + " " + valid, valid + " soon"));
+                events.add(list);
+                TestFilterMatchListener matchListener = new TestFilterMatchListener();
+                if (batch) {
+                    jgrok.filter(events, matchListener);
+                } else {
+                    for (Event e : events) {
+                        jgrok.filter(Collections.singletonList(e), matchListener);
+                    }
+                }
+
+                Assert.assertEquals(5, matchListener.matchCount());
+                Assert.assertEquals("2019-02-03T11:05:60Z", events.get(0).getField("sent"));
+                Assert.assertEquals(new org.logstash.Timestamp(1549191905500L), events.get(0).getField("note"));
+                Assert.assertEquals("19-02-03T11:05:00Z", events.get(1).getField("sent"));
+                Assert.assertEquals("soon", events.get(2).getField("note"));
+                for (Event e : events.subList(0, 3)) {
+                    assertHasTag(e, "_grokdateparsefailure");
+                }
+                assertNoTags(events.get(3));
+                Assert.assertEquals(new org.logstash.Timestamp(1549191905500L), events.get(3).getField("note"));
+                Assert.assertEquals("soon", ((List<Object>) list.getField("note")).get(1));
+                assertHasTag(list, "_grokdateparsefailure");
+            }
+        }
+    }
+
+    private static List<Event> rawSourceEvents() {
+        List<Event> events = new ArrayList<>();
+        for (String message : Arrays.asList("GET /caf\u00e9/\u2603 200 0.043", "PÜT /x 404 12", "no match", "")) {
+            Event e = new org.logstash.Event();
+            e.setField("message", message);
+            e.setField("verb", "original");
+            e.setField("user", message.isEmpty() ? "ünïcode" : "jdoe");
+            events.add(e);
+        }
+        return events;
+    }
+
+    @Test
+    public void testMatchBy() {
+        Map<String, Object> routes = new HashMap<>();
+        routes.put("apache", Collections.singletonMap("message", "%{COMMONAPACHELOG}"));
+        routes.put("syslog", Collections.singletonMap("message", "%{SYSLOGLINE}"));
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{WORD:first}"));
+        config.put(MATCH_BY.name(), "[fields][app]");
+        config.put(ROUTES.name(), routes);
+
+        for (boolean batch : new boolean[]{false, true}) {
+            config.put(BATCH_MATCHING.name(), batch);
+            Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+            Assert.assertEquals(Collections.singletonList("message"), jgrok.getEntryOrder("apache"));
+            Assert.assertNull(jgrok.getEntryOrder("nginx"));
+
+            Event apache = routedEvent("apache", "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326");
+            Event syslog = routedEvent("syslog", "Mar 16 00:01:25 evita postfix/smtpd[1713]: connect from camomile.cloud9.net[168.100.1.3]");
+            Event unrouted = routedEvent("nginx", "hello world");
+            // routed to syslog, which does not match, rather than falling back to the entries of match
+            Event mismatched = routedEvent("syslog", "hello world");
+            TestFilterMatchListener matchListener = new TestFilterMatchListener();
+            jgrok.filter(Arrays.asList(apache, syslog, unrouted, mismatched), matchListener);
+
+            Assert.assertEquals(3, matchListener.matchCount());
+            Assert.assertEquals("frank", apache.getField("auth"));
+            Assert.assertNull(apache.getField("first"));
+            Assert.assertEquals("evita", syslog.getField("logsource"));
+            Assert.assertEquals("hello", unrouted.getField("first"));
+            Assert.assertNull(mismatched.getField("first"));
+            assertHasTag(mismatched, "_grokparsefailure");
+        }
+
+        config.remove(MATCH_BY.name());
+        try {
+            new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+            Assert.fail("Expected routes without match_by to be rejected");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage().contains("match_by"));
+        }
+    }
+
+    private static Event routedEvent(String app, String message) {
+        Event e = new org.logstash.Event();
+        e.setField("[fields][app]", app);
+        e.setField("message", message);
+        return e;
+    }
+
+    @Test
+    public void testMemoryEstimate() {
+        Map<String, Object> match = new LinkedHashMap<>();
+        match.put("message", "%{COMBINEDAPACHELOG}");
+        match.put("verb", "%{WORD:verb}");
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+        Map<String, Object> estimate = jgrok.getMemoryEstimate();
+        Map<String, Long> entries = (Map<String, Long>) estimate.get("entries");
+        Assert.assertEquals(Arrays.asList("message", "verb"), new ArrayList<>(entries.keySet()));
+        Assert.assertTrue(entries.get("message") > entries.get("verb"));
+        Assert.assertTrue((Long) estimate.get("pattern_bank") > 0);
+        Assert.assertEquals((Long) estimate.get("pattern_bank") + entries.get("message") + entries.get("verb"),
+                (long) (Long) estimate.get("total"));
+
+        for (int k = 0; k < 40; k++) {
+            match.put("field" + k, "%{COMBINEDAPACHELOG}");
+        }
+        config.put(MEMORY_BUDGET_MB.name(), 1L);
+        try {
+            new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+            Assert.fail("Expected the memory budget to be exceeded");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("exceeds its memory budget of 1 MB"));
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("'message'"));
+            Assert.assertFalse(ex.getMessage(), ex.getMessage().contains("'field39'"));
+        }
+    }
+
     @Test
     public void testOverwrite() {
         Map<String, Object> config = new HashMap<>();
@@ -247,6 +613,222 @@ public class JgrokTest {
         }
     }
 
+    @Test
+    public void testWarmupSamples() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{IP:client} %{WORD:method} %{URIPATHPARAM:request} %{NUMBER:bytes} %{NUMBER:duration}"));
+        config.put(WARMUP_SAMPLES.name(), Arrays.asList(SIMPLE_LOG_LINE, "not a log line"));
+        config.put(WARMUP_ITERATIONS.name(), 10L);
+
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+        Assert.assertEquals(Collections.singletonList("not a log line"), jgrok.getUnmatchedWarmupSamples());
+
+        Event e = new org.logstash.Event();
+        e.setField("message", SIMPLE_LOG_LINE);
+        TestFilterMatchListener matchListener = new TestFilterMatchListener();
+        jgrok.filter(Collections.singletonList(e), matchListener);
+        Assert.assertEquals(1, matchListener.matchCount());
+        validateSimpleLogLine(e);
+    }
+
+    @Test
+    public void testListSourceField() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("headers", "%{WORD:name}: %{INT:value:int}"));
+        config.put(OVERWRITE.name(), Collections.singletonList("value"));
+        // without the fast-path matchers the elements are matched on joni in per-thread scratch space
+        for (boolean intrinsic : new boolean[]{true, false}) {
+            config.put(INTRINSIC_MATCHERS.name(), intrinsic);
+            config.put(DISSECT_TOKENIZER.name(), intrinsic);
+            Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+            Event e1 = new org.logstash.Event();
+            e1.setField("headers", Arrays.asList("Age: 12", "no header", "Expires: 0"));
+            e1.setField("name", "existing");
+            e1.setField("value", "existing");
+            Event e2 = new org.logstash.Event();
+            e2.setField("headers", Arrays.asList("Age: 3", "\u2192 Expires: 7"));
+            TestFilterMatchListener matchListener = new TestFilterMatchListener();
+            jgrok.filter(Arrays.asList(e1, e2), matchListener);
+
+            Assert.assertEquals(2, matchListener.matchCount());
+            Assert.assertEquals("existing", e1.getField("name"));
+            Assert.assertEquals(Arrays.asList(12L, 0L), e1.getField("value"));
+            Assert.assertEquals(Arrays.asList("Age", "Expires"), e2.getField("name"));
+            Assert.assertEquals(Arrays.asList(3L, 7L), e2.getField("value"));
+        }
+    }
+
+    @Test
+    public void testCaptureFields() {
+        Assert.assertEquals(Arrays.asList("client", "NUMBER", "bytes"), Jgrok.captureFields(
+                "(?<IP:client>x)(?:y)(?<NUMBER>(?<=a)z)(?<NUMBER:bytes:int>1)(?<IP:client>2)"));
+    }
+
+    @Test
+    public void testMatchOnly() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", "%{IP:client} %{WORD:method} %{URIPATHPARAM:request}"));
+        config.put(MATCH_ONLY.name(), Collections.singletonList("message"));
+        config.put(TAG_ON_MATCH.name(), "access");
+        config.put(MATCH_FLAG.name(), "[@metadata][access]");
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+        Event e1 = new org.logstash.Event();
+        e1.setField("message", SIMPLE_LOG_LINE);
+        Event e2 = new org.logstash.Event();
+        e2.setField("message", Arrays.asList("foo", SIMPLE_LOG_LINE));
+        Event e3 = new org.logstash.Event();
+        e3.setField("message", "foo");
+        TestFilterMatchListener matchListener = new TestFilterMatchListener();
+        jgrok.filter(Arrays.asList(e1, e2, e3), matchListener);
+
+        Assert.assertEquals(2, matchListener.matchCount());
+        for (Event e : Arrays.asList(e1, e2)) {
+            Assert.assertEquals(Collections.singletonList("access"), e.getField("tags"));
+            Assert.assertEquals(true, e.getField("[@metadata][access]"));
+            Assert.assertNull(e.getField("client"));
+        }
+        Assert.assertEquals(Collections.singletonList("_grokparsefailure"), e3.getField("tags"));
+        Assert.assertNull(e3.getField("[@metadata][access]"));
+    }
+
+    @Test
+    public void testBatchMatching() {
+        Map<String, Object> match = new LinkedHashMap<>();
+        match.put("message", Arrays.asList("%{IP:client} (?<method>[A-Z]+) %{URIPATHPARAM:request}",
+                "(?<word>\\w+) %{INT:n:int}"));
+        match.put("method", "(?<verb>GET|POST)");
+        match.put("other", "%{WORD:word} %{WORD:second}");
+        List<String> fields = Arrays.asList("client", "method", "request", "word", "n", "verb", "second", "tags");
+        for (boolean breakOnMatch : Arrays.asList(true, false)) {
+            List<List<Object>> results = new ArrayList<>();
+            for (boolean batchMatching : Arrays.asList(false, true)) {
+                Map<String, Object> config = new HashMap<>();
+                config.put(MATCH.name(), match);
+                config.put(BREAK_ON_MATCH.name(), breakOnMatch);
+                config.put(BATCH_MATCHING.name(), batchMatching);
+                Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+                List<Event> events = new ArrayList<>();
+                for (Object message : Arrays.asList(SIMPLE_LOG_LINE, "ab\u00e9c 12", "unmatched", "10.0.0.1 PUT /x",
+                        Arrays.asList("1.2.3.4 POST /a", "x 1"), null, "\ud83d\ude00 7")) {
+                    Event e = new org.logstash.Event();
+                    if (message != null) {
+                        e.setField("message", message);
+                    }
+                    e.setField("other", "hello world");
+                    events.add(e);
+                }
+                TestFilterMatchListener matchListener = new TestFilterMatchListener();
+                jgrok.filter(events, matchListener);
+
+                List<Object> result = new ArrayList<>();
+                result.add(matchListener.matchCount());
+                for (Event e : events) {
+                    for (String field : fields) {
+                        result.add(e.getField(field));
+                    }
+                }
+                results.add(result);
+            }
+            Assert.assertEquals(results.get(0), results.get(1));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCoverage() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message",
+                Arrays.asList("%{IP:client} %{WORD:method}", "%{WORD:word} %{INT:n}", "%{UUID:id}")));
+        config.put(COVERAGE_REPORT_INTERVAL.name(), 3600L);
+        config.put(COVERAGE_SAMPLE_RATE.name(), 1L);
+        // warm-up events are not counted
+        config.put(WARMUP_SAMPLES.name(), Arrays.asList(SIMPLE_LOG_LINE, "unmatched"));
+        config.put(WARMUP_ITERATIONS.name(), 3L);
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+        List<Event> events = new ArrayList<>();
+        for (String message : Arrays.asList(SIMPLE_LOG_LINE, "abc 12", "55.3.244.1 POST", "unmatched")) {
+            Event e = new org.logstash.Event();
+            e.setField("message", message);
+            events.add(e);
+        }
+        jgrok.filter(events, new TestFilterMatchListener());
+
+        Map<String, Object> coverage = (Map<String, Object>) jgrok.getCoverage().get("message");
+        Assert.assertEquals(4L, coverage.get("evaluated"));
+        Assert.assertEquals(3L, coverage.get("matched"));
+        Assert.assertEquals(4L, coverage.get("sampled"));
+        List<Map<String, Object>> alternatives = (List<Map<String, Object>>) coverage.get("alternatives");
+        Assert.assertEquals(3, alternatives.size());
+        Assert.assertEquals("%{UUID:id}", alternatives.get(2).get("pattern"));
+        Assert.assertEquals(4L, alternatives.get(2).get("evaluated"));
+        Assert.assertEquals(Arrays.asList(2L, 1L, 0L), Arrays.asList(alternatives.get(0).get("won"),
+                alternatives.get(1).get("won"), alternatives.get(2).get("won")));
+        Assert.assertTrue(jgrok.coverageReport().contains("alternative 2: won 0 (0.00%)"));
+        Assert.assertTrue(jgrok.coverageReport().contains("never won: %{UUID:id}"));
+    }
+
+    @Test
+    public void testInternCaptures() {
+        for (String pattern : Arrays.asList("%{IP:client} %{WORD:method} %{URIPATHPARAM:request}",
+                "%{IP:client} (?<method>[A-Z]+) %{URIPATHPARAM:request}")) {
+            Map<String, Object> config = new HashMap<>();
+            config.put(MATCH.name(), Collections.singletonMap("message", pattern));
+            config.put(INTERN_CAPTURES.name(), Collections.singletonList("method"));
+            Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+            Event e1 = new org.logstash.Event();
+            e1.setField("message", SIMPLE_LOG_LINE);
+            Event e2 = new org.logstash.Event();
+            e2.setField("message", "10.0.0.1 GET /other.html");
+            TestFilterMatchListener matchListener = new TestFilterMatchListener();
+            jgrok.filter(Arrays.asList(e1, e2), matchListener);
+
+            Assert.assertEquals(2, matchListener.matchCount());
+            Assert.assertEquals("GET", e1.getField("method"));
+            Assert.assertSame(pattern, e1.getField("method"), e2.getField("method"));
+            Assert.assertEquals("/other.html", e2.getField("request"));
+            Assert.assertNotSame(e1.getField("client"), e2.getField("client"));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProfileSampling() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), Collections.singletonMap("message", Arrays.asList("%{INT:number}", "%{IP:client} %{WORD:method}")));
+        config.put(PROFILE_SAMPLE_RATE.name(), 2L);
+        config.put(PROFILE_TARGET.name(), "[@metadata][grok_profile]");
+        // warm-up events are neither profiled nor counted towards the sample rate
+        config.put(WARMUP_SAMPLES.name(), Collections.singletonList(SIMPLE_LOG_LINE));
+        config.put(WARMUP_ITERATIONS.name(), 1L);
+        Jgrok jgrok = new Jgrok("test-jgrok", new ConfigurationImpl(config), new ContextImpl(null));
+
+        Event e1 = new org.logstash.Event();
+        e1.setField("message", SIMPLE_LOG_LINE);
+        Event e2 = new org.logstash.Event();
+        e2.setField("message", SIMPLE_LOG_LINE);
+        jgrok.filter(Arrays.asList(e1, e2), new TestFilterMatchListener());
+
+        Assert.assertNull(e1.getField("[@metadata][grok_profile]"));
+        Map<String, Object> profile = (Map<String, Object>) e2.getField("[@metadata][grok_profile]");
+        List<Object> entryProfiles = (List<Object>) profile.get("message");
+        Assert.assertEquals(1, entryProfiles.size());
+        Map<String, Object> entryProfile = (Map<String, Object>) entryProfiles.get(0);
+        Assert.assertEquals(true, entryProfile.get("matched"));
+        List<Object> alternatives = (List<Object>) entryProfile.get("alternatives");
+        Assert.assertEquals(2, alternatives.size());
+        Map<String, Object> first = (Map<String, Object>) alternatives.get(0);
+        Assert.assertEquals("%{INT:number}", first.get("pattern"));
+        Assert.assertEquals(true, first.get("matched"));
+        Assert.assertEquals(false, first.get("timed_out"));
+        Assert.assertTrue((Long) first.get("nanos") > 0);
+        Assert.assertEquals(true, ((Map<String, Object>) alternatives.get(1)).get("matched"));
+    }
+
     private static Path[] setupPatternsDirTest() throws IOException {
         Path tempDir1 = Files.createTempDirectory("logstash_test");
         Path tempDir2 = Files.createTempDirectory("logstash_test");
@@ -261,6 +843,20 @@ public class JgrokTest {
         return new Path[]{tempDir1, tempDir2};
     }
 
+    @Test
+    public void testPatternsFileFormats() throws IOException {
+        Path dir = Files.createTempDirectory("logstash_test");
+        try {
+            Files.write(dir.resolve("patterns"), Arrays.asList("PLAIN %{WORD}-%{INT}", "COMMA, %{WORD} %{INT}"));
+            Map<String, String> patterns = Jgrok.readPatternsFromDirs(Collections.singletonList(dir.toString()), "*");
+            Assert.assertEquals("%{WORD}-%{INT}", patterns.get("PLAIN"));
+            Assert.assertEquals("%{WORD} %{INT}", patterns.get("COMMA"));
+            Assert.assertEquals(2, patterns.size());
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
     private static void tearDownPatternsDirTest(Path[] dirs) throws IOException {
         for (Path dir : dirs) {
             deleteDir(dir);
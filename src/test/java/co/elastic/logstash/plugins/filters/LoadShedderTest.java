@@ -0,0 +1,48 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoadShedderTest {
+
+    @Test
+    public void testShedsAndRecoversOneLevelAtATime() {
+        // every batch closes a window and two calm windows restore a level
+        long[] now = {0};
+        LoadShedder shedder = new LoadShedder(1000, 1, 2, true, () -> now[0]);
+        Assert.assertEquals(LoadShedder.FULL, shedder.level());
+        closeWindow(shedder, now, 5000);
+        Assert.assertEquals(LoadShedder.ESSENTIAL, shedder.level());
+        closeWindow(shedder, now, 5000);
+        Assert.assertEquals(LoadShedder.MATCH_ONLY, shedder.level());
+        closeWindow(shedder, now, 5000);
+        Assert.assertEquals(LoadShedder.MATCH_ONLY, shedder.level());
+
+        closeWindow(shedder, now, 100);
+        Assert.assertEquals(LoadShedder.MATCH_ONLY, shedder.level());
+        closeWindow(shedder, now, 100);
+        Assert.assertEquals(LoadShedder.ESSENTIAL, shedder.level());
+        // a window between half the threshold and the threshold restarts the recovery period
+        closeWindow(shedder, now, 100);
+        closeWindow(shedder, now, 700);
+        closeWindow(shedder, now, 100);
+        Assert.assertEquals(LoadShedder.ESSENTIAL, shedder.level());
+        closeWindow(shedder, now, 100);
+        Assert.assertEquals(LoadShedder.FULL, shedder.level());
+    }
+
+    @Test
+    public void testSkipsEssentialLevelWithoutEssentialEntries() {
+        long[] now = {0};
+        LoadShedder shedder = new LoadShedder(1000, 1, 1, false, () -> now[0]);
+        closeWindow(shedder, now, 5000);
+        Assert.assertEquals(LoadShedder.MATCH_ONLY, shedder.level());
+        closeWindow(shedder, now, 0);
+        Assert.assertEquals(LoadShedder.FULL, shedder.level());
+    }
+
+    private static void closeWindow(LoadShedder shedder, long[] now, long nanosPerEvent) {
+        now[0]++;
+        shedder.record(10 * nanosPerEvent, 10);
+    }
+}
@@ -0,0 +1,55 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class MatchBatchTest {
+
+    @Test
+    public void testEncodesValuesIntoArena() {
+        MatchBatch batch = new MatchBatch();
+        byte[] raw = "xx raw".getBytes(StandardCharsets.UTF_8);
+        batch.add(0, "über");
+        batch.add(1, raw, 3, raw.length);
+        batch.add(2, "😀");
+        Assert.assertEquals(3, batch.size);
+        Assert.assertEquals("über", value(batch, 0));
+        Assert.assertSame(raw, batch.values[1]);
+        Assert.assertEquals("raw", value(batch, 1));
+        Assert.assertEquals("😀", value(batch, 2));
+        Assert.assertEquals(2, batch.events[2]);
+    }
+
+    @Test
+    public void testTrimReleasesLargeArrays() {
+        MatchBatch batch = new MatchBatch();
+        byte[] raw = new byte[16];
+        batch.add(0, raw, 0, raw.length);
+        batch.trim();
+        Assert.assertEquals(0, batch.size);
+        Assert.assertNull(batch.values[0]);
+
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() <= MatchBatch.MAX_RETAINED_BYTES) {
+            builder.append("0123456789abcdef");
+        }
+        for (int k = 0; k <= MatchBatch.MAX_RETAINED_VALUES; k++) {
+            batch.add(k, k == 0 ? builder.toString() : "value");
+        }
+        Assert.assertTrue(batch.arena.length > MatchBatch.MAX_RETAINED_BYTES);
+        Assert.assertTrue(batch.events.length > MatchBatch.MAX_RETAINED_VALUES);
+        batch.trim();
+        Assert.assertTrue(batch.arena.length <= MatchBatch.MAX_RETAINED_BYTES);
+        Assert.assertTrue(batch.events.length <= MatchBatch.MAX_RETAINED_VALUES);
+        Assert.assertEquals(batch.events.length, batch.values.length);
+
+        batch.add(0, "after");
+        Assert.assertEquals("after", value(batch, 0));
+    }
+
+    private static String value(MatchBatch batch, int b) {
+        return new String(batch.values[b], batch.starts[b], batch.ends[b] - batch.starts[b], StandardCharsets.UTF_8);
+    }
+}
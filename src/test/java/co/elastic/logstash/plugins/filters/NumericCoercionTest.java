@@ -0,0 +1,71 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class NumericCoercionTest {
+
+    private static final String[] VALUES = {
+            "0", "-0", "+0", "7", "-7", "+7", "200", "1023", "1024", "-128", "-129", "2147483647", "-2147483648",
+            "2147483648", "-2147483649", "0000000000012", "12345678901", "", "-", "+", " 5", "5 ", "1e3", "1E-2",
+            "0x1F", "3.5", "-3.5", ".5", "5.", ".", "-.", "0.043", "-0.0", "16777215", "16777216", "16777217",
+            "1.0000001", "0.1", "0.3", "3.4028235e38", "99999999.99", "0.0000000001", "0.00000000001",
+            "1.5f", "1.5d", "NaN", "Infinity", "-Infinity", "١٢٣", "12é", "1..2", "1.2.3", "--1", "+-1"
+    };
+
+    @Test
+    public void testParityWithStringCoercion() {
+        for (String value : VALUES) {
+            assertParity(value);
+        }
+        Random random = new Random(7);
+        for (int k = 0; k < 100000; k++) {
+            StringBuilder value = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                value.append('-');
+            }
+            int digits = 1 + random.nextInt(9);
+            for (int d = 0; d < digits; d++) {
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                value.insert(random.nextInt(value.length() + 1), '.');
+            }
+            assertParity(value.toString());
+        }
+    }
+
+    @Test
+    public void testSmallIntegersAreCached() {
+        byte[] bytes = "404 404 70000 70000".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(NumericCoercion.parseInt(bytes, 0, 3), NumericCoercion.parseInt(bytes, 4, 7));
+        Assert.assertEquals(NumericCoercion.parseInt(bytes, 8, 13), NumericCoercion.parseInt(bytes, 14, 19));
+    }
+
+    private static void assertParity(String value) {
+        byte[] bytes = ("<" + value + ">").getBytes(StandardCharsets.UTF_8);
+        for (String type : Arrays.asList("int", "float", "string")) {
+            Object expected;
+            try {
+                expected = NumericCoercion.coerce(value, type);
+            } catch (NumberFormatException e) {
+                expected = e.getClass();
+            }
+            Object actual;
+            try {
+                actual = NumericCoercion.coerce(bytes, 1, bytes.length - 1, type);
+            } catch (NumberFormatException e) {
+                actual = e.getClass();
+            }
+            Assert.assertEquals(type + " '" + value + "'", expected, actual);
+            if (expected instanceof Float) {
+                Assert.assertEquals(type + " '" + value + "'", Float.floatToRawIntBits((Float) expected),
+                        Float.floatToRawIntBits((Float) actual));
+            }
+        }
+    }
+}
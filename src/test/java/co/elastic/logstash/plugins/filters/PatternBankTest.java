@@ -0,0 +1,49 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PatternBankTest {
+
+    @Test
+    public void testOverlaysShadowLowerLayers() {
+        Map<String, String> dirPatterns = new HashMap<>();
+        dirPatterns.put("WORD", "[a-z]+");
+        dirPatterns.put("MYPATTERN", "%{WORD}-%{INT}");
+        PatternBank bank = PatternBank.builtin()
+                .overlay(dirPatterns)
+                .overlay(Collections.singletonMap("MYPATTERN", "%{WORD}:%{INT}"));
+
+        Map<String, String> expected = new HashMap<>(Grok.getBuiltinPatterns());
+        expected.putAll(dirPatterns);
+        expected.put("MYPATTERN", "%{WORD}:%{INT}");
+        Assert.assertEquals(expected, bank);
+        Assert.assertEquals(expected.size(), bank.size());
+        Assert.assertEquals(expected.size(), bank.entrySet().stream().count());
+        Assert.assertEquals("[a-z]+", bank.get("WORD"));
+        Assert.assertSame(PatternBank.builtin(), PatternBank.builtin().overlay(Collections.emptyMap()));
+
+        Grok grok = new Grok(bank, "%{MYPATTERN}");
+        Assert.assertNotNull(grok.captures("abc:12"));
+        Assert.assertNull(grok.captures("abc-12"));
+    }
+
+    @Test
+    public void testDefinitionsAreShared() {
+        Map<String, String> first = Collections.singletonMap("MYPATTERN", new String("%{WORD}:%{INT}"));
+        Map<String, String> second = Collections.singletonMap("MYPATTERN", new String("%{WORD}:%{INT}"));
+        Assert.assertSame(PatternBank.builtin().overlay(first).get("MYPATTERN"),
+                PatternBank.builtin().overlay(second).get("MYPATTERN"));
+        Assert.assertSame(PatternBank.builtin().get("WORD"), Grok.getBuiltinPatterns().get("WORD"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        PatternBank.builtin().put("WORD", "x");
+    }
+}
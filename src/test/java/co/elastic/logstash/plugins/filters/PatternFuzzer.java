@@ -0,0 +1,295 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.logstash.plugins.ConfigurationImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.PATTERNS_DIR;
+import static co.elastic.logstash.plugins.filters.Jgrok.WARMUP_SAMPLES;
+import static co.elastic.logstash.plugins.filters.Jgrok.WARMUP_SAMPLES_FILE;
+
+// Searches for inputs on which the patterns of a filter take time that grows faster than their length.
+// Run with gradle fuzzPatterns -PbenchmarkArgs="<max length> <patterns dir or -> <pattern> ...".
+public class PatternFuzzer {
+
+    static final double SUPER_LINEAR = 1.5;
+
+    private static final String RUN_CHARACTERS = "a0A .-:/,\"[\t";
+    private static final int MAX_SEEDS = 4;
+    private static final int MAX_CUTS = 8;
+    private static final int CANDIDATES_TIMED_IN_FULL = 3;
+
+    private final int maxLength;
+    private final ThreadWatchdog watchdog;
+
+    PatternFuzzer(int maxLength, long timeoutMillis) {
+        this.maxLength = maxLength;
+        this.watchdog = DeadlineWatchdog.newInstance(Math.max(1, timeoutMillis / 4), timeoutMillis);
+    }
+
+    public static void main(String[] args) {
+        int maxLength = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        Map<String, Object> match = new HashMap<>();
+        for (int k = 2; k < args.length; k++) {
+            match.put("pattern" + (k - 2), args[k]);
+        }
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        if (args.length > 1 && !args[1].equals("-")) {
+            config.put(PATTERNS_DIR.name(), Collections.singletonList(args[1]));
+        }
+
+        List<Finding> findings = new PatternFuzzer(maxLength, 1000).fuzz(config);
+        for (Finding finding : findings) {
+            System.out.println(finding);
+        }
+        System.exit(0);
+    }
+
+    List<Finding> fuzz(Map<String, Object> settings) {
+        ConfigurationImpl config = new ConfigurationImpl(settings);
+        Grok grok = new Grok(Jgrok.loadPatternBank(config), "%{INT}", ThreadWatchdog.noop());
+        List<String> samples = Jgrok.readWarmupSamples(config.get(WARMUP_SAMPLES), config.get(WARMUP_SAMPLES_FILE));
+        List<Finding> findings = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : config.get(MATCH).entrySet()) {
+            List<?> patterns = entry.getValue() instanceof List
+                    ? (List<?>) entry.getValue()
+                    : Collections.singletonList(entry.getValue());
+            for (Object pattern : patterns) {
+                CompiledGrok compiled = CompiledGrok.compile(grok, (String) pattern, watchdog);
+                findings.add(fuzz(entry.getKey(), (String) pattern, compiled, samples));
+            }
+        }
+        findings.sort(Comparator.comparingDouble((Finding f) -> f.exponent).reversed());
+        return findings;
+    }
+
+    private Finding fuzz(String field, String pattern, CompiledGrok compiled, List<String> samples) {
+        List<Family> families = families(compiled, samples);
+        int small = Math.max(1, maxLength / 16);
+        int large = Math.max(small + 1, maxLength / 4);
+        for (Family family : families) {
+            long smallNanos = time(compiled, family.input(small));
+            long largeNanos = smallNanos == Long.MAX_VALUE ? Long.MAX_VALUE : time(compiled, family.input(large));
+            family.estimate = exponent(small, smallNanos, large, largeNanos);
+            family.largeNanos = largeNanos;
+        }
+        families.sort(Comparator.comparingDouble((Family f) -> f.estimate)
+                .thenComparingLong(f -> f.largeNanos).reversed());
+
+        Finding worst = null;
+        for (Family family : families.subList(0, Math.min(CANDIDATES_TIMED_IN_FULL, families.size()))) {
+            Finding finding = curve(field, pattern, compiled, family);
+            if (worst == null || finding.exponent > worst.exponent) {
+                worst = finding;
+            }
+        }
+        return worst;
+    }
+
+    // times the family at every power of two up to the maximum length, stopping at the first timeout
+    private Finding curve(String field, String pattern, CompiledGrok compiled, Family family) {
+        List<Integer> lengths = new ArrayList<>();
+        List<Long> nanos = new ArrayList<>();
+        for (int length = Math.max(1, maxLength / 64); length <= maxLength; length *= 2) {
+            long elapsed = time(compiled, family.input(length));
+            lengths.add(length);
+            nanos.add(elapsed);
+            if (elapsed == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        // short inputs are dominated by the fixed cost of a search, so only the longer half is fitted
+        double exponent = nanos.get(nanos.size() - 1) == Long.MAX_VALUE
+                ? Double.POSITIVE_INFINITY
+                : fit(lengths.subList(lengths.size() / 2, lengths.size()), nanos.subList(nanos.size() / 2, nanos.size()));
+        return new Finding(field, pattern, family.name, family.input(lengths.get(lengths.size() - 1)),
+                lengths, nanos, exponent);
+    }
+
+    private static List<Family> families(CompiledGrok compiled, List<String> samples) {
+        List<Family> families = new ArrayList<>();
+        int seeds = 0;
+        for (String sample : samples) {
+            if (seeds == MAX_SEEDS || sample.isEmpty() || !compiled.matches(sample)) {
+                continue;
+            }
+            seeds++;
+            Set<Character> delimiters = new LinkedHashSet<>();
+            for (int cut : cuts(sample)) {
+                char c = sample.charAt(Math.min(cut, sample.length() - 1));
+                String head = sample.substring(0, cut);
+                String tail = sample.substring(cut);
+                families.add(new Family("near miss stretching '" + c + "' at " + cut,
+                        n -> head + repeat(String.valueOf(c), n) + tail.substring(0, Math.max(0, tail.length() - 1)) + "\u0001"));
+                if (cut > 0 && !Character.isLetterOrDigit(sample.charAt(cut - 1))) {
+                    delimiters.add(sample.charAt(cut - 1));
+                }
+            }
+            for (char d : delimiters) {
+                int at = sample.indexOf(d);
+                String head = sample.substring(0, at);
+                String tail = sample.substring(at);
+                families.add(new Family("repeated delimiter '" + d + "' at " + at,
+                        n -> head + repeat(String.valueOf(d), n) + tail));
+            }
+        }
+        for (char c : RUN_CHARACTERS.toCharArray()) {
+            families.add(new Family("run of '" + c + "'", n -> repeat(String.valueOf(c), n) + "\u0001"));
+            if (Character.isLetterOrDigit(c)) {
+                families.add(new Family("run of '" + c + " '", n -> repeat(c + " ", n / 2) + "\u0001"));
+            }
+        }
+        return families;
+    }
+
+    // the start of the sample and of every token, thinned out to at most MAX_CUTS positions
+    private static List<Integer> cuts(String sample) {
+        List<Integer> tokens = new ArrayList<>();
+        tokens.add(0);
+        for (int k = 1; k < sample.length(); k++) {
+            if (Character.isLetterOrDigit(sample.charAt(k)) != Character.isLetterOrDigit(sample.charAt(k - 1))) {
+                tokens.add(k);
+            }
+        }
+        List<Integer> cuts = new ArrayList<>();
+        for (int k = 0; k < MAX_CUTS && k < tokens.size(); k++) {
+            cuts.add(tokens.get(k * tokens.size() / Math.min(MAX_CUTS, tokens.size())));
+        }
+        return cuts;
+    }
+
+    // Long.MAX_VALUE if the search timed out
+    private long time(CompiledGrok compiled, String input) {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        long best = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < 3; round++) {
+                int searches = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    compiled.search(bytes, 0);
+                    searches++;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < 1_000_000 && searches < 10_000);
+                best = Math.min(best, elapsed / searches);
+            }
+        } catch (RuntimeException ex) {
+            if (!Jgrok.isTimeout(ex)) {
+                throw ex;
+            }
+            // a search that completes as the watchdog fires leaves the flag set for the next one
+            Thread.interrupted();
+            return Long.MAX_VALUE;
+        }
+        return best;
+    }
+
+    private static double exponent(int smallLength, long smallNanos, int largeLength, long largeNanos) {
+        if (largeNanos == Long.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.log((double) Math.max(1, largeNanos) / Math.max(1, smallNanos))
+                / Math.log((double) largeLength / smallLength);
+    }
+
+    // least-squares slope of log time over log length
+    private static double fit(List<Integer> lengths, List<Long> nanos) {
+        if (lengths.size() < 2) {
+            return 0;
+        }
+        double meanX = 0;
+        double meanY = 0;
+        for (int k = 0; k < lengths.size(); k++) {
+            meanX += Math.log(lengths.get(k)) / lengths.size();
+            meanY += Math.log(Math.max(1, nanos.get(k))) / lengths.size();
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int k = 0; k < lengths.size(); k++) {
+            double x = Math.log(lengths.get(k)) - meanX;
+            covariance += x * (Math.log(Math.max(1, nanos.get(k))) - meanY);
+            variance += x * x;
+        }
+        return covariance / variance;
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * Math.max(0, times));
+        for (int k = 0; k < times; k++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static final class Family {
+
+        final String name;
+        final IntFunction<String> generator;
+        double estimate;
+        long largeNanos;
+
+        Family(String name, IntFunction<String> generator) {
+            this.name = name;
+            this.generator = generator;
+        }
+
+        String input(int length) {
+            return generator.apply(length);
+        }
+    }
+
+    static final class Finding {
+
+        final String field;
+        final String pattern;
+        final String family;
+        final String input;
+        final List<Integer> lengths;
+        final List<Long> nanos;
+        final double exponent;
+
+        Finding(String field, String pattern, String family, String input, List<Integer> lengths, List<Long> nanos,
+                double exponent) {
+            this.field = field;
+            this.pattern = pattern;
+            this.family = family;
+            this.input = input;
+            this.lengths = lengths;
+            this.nanos = nanos;
+            this.exponent = exponent;
+        }
+
+        boolean superLinear() {
+            return exponent > SUPER_LINEAR;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%s%s: %s, exponent %.2f, %s%n  curve:",
+                    superLinear() ? "SUPER-LINEAR " : "", field, pattern, exponent, family));
+            for (int k = 0; k < lengths.size(); k++) {
+                sb.append(nanos.get(k) == Long.MAX_VALUE
+                        ? String.format(" %d:timeout", lengths.get(k))
+                        : String.format(" %d:%.1fus", lengths.get(k), nanos.get(k) / 1e3));
+            }
+            String shown = input.length() > 120 ? input.substring(0, 120) + "..." : input;
+            sb.append(String.format("%n  worst input (%d chars): %s", input.length(),
+                    shown.replace("\t", "\\t").replace("\u0001", "\\u0001")));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.WARMUP_SAMPLES;
+
+public class PatternFuzzerTest {
+
+    @Test
+    public void testFindsCatastrophicBacktracking() {
+        Map<String, Object> match = new HashMap<>();
+        match.put("request", "^%{WORD:verb} %{INT:code}$");
+        match.put("words", Arrays.asList("^%{NUMBER:count}$", "^(\\w+\\s?)*$"));
+        Map<String, Object> config = new HashMap<>();
+        config.put(MATCH.name(), match);
+        config.put(WARMUP_SAMPLES.name(), Arrays.asList("GET 200", "foo bar baz"));
+
+        List<PatternFuzzer.Finding> findings = new PatternFuzzer(1024, 100).fuzz(config);
+        Assert.assertEquals(3, findings.size());
+        // the nested quantifier backtracks exponentially and times out on the shortest input
+        PatternFuzzer.Finding worst = findings.get(0);
+        Assert.assertEquals("^(\\w+\\s?)*$", worst.pattern);
+        Assert.assertTrue(worst.superLinear());
+        Assert.assertEquals(Long.MAX_VALUE, (long) worst.nanos.get(worst.nanos.size() - 1));
+        // the growth of the linear patterns depends on timing, so they are only expected to finish in time
+        for (PatternFuzzer.Finding finding : findings.subList(1, findings.size())) {
+            Assert.assertNotEquals(finding.toString(), Long.MAX_VALUE, (long) finding.nanos.get(finding.nanos.size() - 1));
+        }
+    }
+}
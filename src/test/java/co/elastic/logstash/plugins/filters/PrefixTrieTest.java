@@ -0,0 +1,77 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// differential tests of the merged alternatives against the plain combined pattern
+public class PrefixTrieTest {
+
+    private static final String[] FRAGMENTS = {
+            "a", "bc", "12", "3.5", " ", "  ", ":", "-", "x=", "y=", "GET ", "POST ", "/index", " 200", " 404",
+            "10.0.0.1", "é"
+    };
+
+    private static final List<List<String>> PATTERN_LISTS = Arrays.asList(
+            Arrays.asList("%{WORD:a} %{INT:n:int}", "%{WORD:a} %{WORD:b}", "%{WORD:c}"),
+            Arrays.asList("x=%{NUMBER:x:float}", "x=%{WORD:x}", "y=%{WORD:y}"),
+            Arrays.asList("%{WORD:verb} %{URIPATH:path} %{INT:status}", "%{WORD:verb} %{URIPATH:path}",
+                    "%{WORD:verb} %{NOTSPACE:other}"),
+            Arrays.asList("%{IP:ip}(?: %{INT:code})?", "%{IP:client}-%{WORD}", "%{IP:ip}"),
+            Arrays.asList("^%{WORD:a}:", "^%{WORD:b}", "%{NUMBER:n}$"),
+            Arrays.asList("(?<w>[a-z]+)=%{INT:v}", "(?<w>[a-z]+)=%{WORD:s}", "[a-z]+ (?:GET|POST)"),
+            Arrays.asList("(?:%{WORD:a}|%{INT:b}) x", "(?:%{WORD:a}|%{INT:b}) y", "%{WORD:a}|%{INT:b}"),
+            Arrays.asList("%{WORD:a} %{INT:b}", "%{WORD:a} %{INT:b}", "%{WORD:c}"));
+
+    @Test
+    public void testDifferentialAgainstCombinedPattern() {
+        Random random = new Random(42);
+        Map<String, String> patternBank = Grok.getBuiltinPatterns();
+        for (List<String> patterns : PATTERN_LISTS) {
+            Grok grok = new Grok(patternBank, Jgrok.combinePatterns(patterns));
+            PrefixTrie trie = PrefixTrie.compile(patterns, grok, ThreadWatchdog.noop());
+            Assert.assertNotNull("expected merged matcher for " + patterns, trie);
+            // as Jgrok compiles it, on the regex of the grok instance
+            PrefixTrie shared = PrefixTrie.compile(patterns, grok, ThreadWatchdog.noop(),
+                    CompiledGrok.of(grok, ThreadWatchdog.noop(), Collections.emptyMap()));
+
+            for (int k = 0; k < 20000; k++) {
+                StringBuilder text = new StringBuilder();
+                int fragments = random.nextInt(8);
+                for (int f = 0; f < fragments; f++) {
+                    text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                Assert.assertEquals(patterns + " on '" + text + "'", grok.captures(text.toString()),
+                        trie.captures(text.toString()));
+                Assert.assertEquals(patterns + " on '" + text + "'", grok.captures(text.toString()),
+                        shared.captures(text.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void testMergedPattern() {
+        Assert.assertEquals("%{SYSLOGBASE} (?:%{WORD}|%{INT}(?:%{WORD}|))",
+                PrefixTrie.merge(Arrays.asList("%{SYSLOGBASE:base} %{WORD:w}", "%{SYSLOGBASE} %{INT:i}%{WORD}",
+                        "%{SYSLOGBASE} %{INT:j}")));
+        Assert.assertEquals("(?:[a-z]+(?:\\d{2,}|x)|y)",
+                PrefixTrie.merge(Arrays.asList("[a-z]+\\d{2,}", "[a-z]+x", "y")));
+    }
+
+    @Test
+    public void testPatternsThatAreNotMerged() {
+        Assert.assertNull(PrefixTrie.merge(Collections.singletonList("%{WORD:a} %{WORD:b}")));
+        Assert.assertNull(PrefixTrie.merge(Arrays.asList("%{WORD:a} x", "%{INT:a} x")));
+        Assert.assertNull(PrefixTrie.merge(Arrays.asList("(?<a>x) \\k<a>", "(?<a>x) y")));
+        Assert.assertNull(PrefixTrie.merge(Arrays.asList("(x) \\1", "(x) y")));
+        Assert.assertNull(PrefixTrie.merge(Arrays.asList("x(?i)y", "xz")));
+        Assert.assertNull(PrefixTrie.merge(Arrays.asList("x(y", "x")));
+    }
+}
@@ -0,0 +1,50 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+public class SlowestInputsTest {
+
+    @Test
+    public void testKeepsSlowestValues() {
+        SlowestInputs slowest = new SlowestInputs("message", 3, 100);
+        for (int k = 1; k <= 10; k++) {
+            slowest.record("value" + k, k * 1000, SlowestInputs.MATCHED);
+        }
+        slowest.record("timed out", 5, SlowestInputs.TIMED_OUT);
+        slowest.record("fast", 1, SlowestInputs.FAILED);
+
+        List<Map<String, Object>> snapshot = slowest.snapshot();
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals("timed out", snapshot.get(0).get("text"));
+        Assert.assertEquals(SlowestInputs.TIMED_OUT, snapshot.get(0).get("outcome"));
+        Assert.assertEquals("value10", snapshot.get(1).get("text"));
+        Assert.assertEquals(10000L, snapshot.get(1).get("nanos"));
+        Assert.assertEquals("value9", snapshot.get(2).get("text"));
+    }
+
+    @Test
+    public void testTruncatesAndEscapes() throws IOException {
+        SlowestInputs slowest = new SlowestInputs("message", 2, 8);
+        String longText = "a\tb\\c\nd-and-more";
+        slowest.record(longText, 20, SlowestInputs.FAILED);
+        slowest.record("a\tb\\c\nd-and-less", 10, SlowestInputs.FAILED);
+
+        List<Map<String, Object>> snapshot = slowest.snapshot();
+        Assert.assertEquals("a\tb\\c\nd-", snapshot.get(0).get("text"));
+        Assert.assertEquals(longText.length(), snapshot.get(0).get("length"));
+        Assert.assertNotEquals(snapshot.get(0).get("hash"), snapshot.get(1).get("hash"));
+
+        StringWriter out = new StringWriter();
+        slowest.writeTo(out);
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("message\t20\tfailed\t" + longText.length() + "\t" + snapshot.get(0).get("hash") +
+                "\ta\\tb\\\\c\\nd-", lines[0]);
+    }
+}
@@ -0,0 +1,142 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.elasticsearch.grok.Grok;
+import org.elasticsearch.grok.ThreadWatchdog;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Regex;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static co.elastic.logstash.plugins.filters.Jgrok.MATCH;
+import static co.elastic.logstash.plugins.filters.Jgrok.PATTERNS_DIR;
+import static co.elastic.logstash.plugins.filters.Jgrok.PATTERN_DEFINITIONS;
+
+// Measures the phases of building a filter for a large synthetic configuration.
+// Run with gradle startupBenchmark -PbenchmarkArgs="<pattern files> <patterns per file> <match fields> <nesting depth> <iterations>".
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int patternsPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int fields = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        Path patternsDir = Files.createTempDirectory("jgrok_startup");
+        try {
+            writePatternFiles(patternsDir, files, patternsPerFile);
+            Map<String, Object> patternDefinitions = new HashMap<>();
+            patternDefinitions.put("NESTED0", "%{INT}");
+            for (int d = 1; d <= depth; d++) {
+                patternDefinitions.put("NESTED" + d, "(?:%{NESTED" + (d - 1) + "}|x" + d + ")");
+            }
+            Map<String, Object> match = new LinkedHashMap<>();
+            for (int f = 0; f < fields; f++) {
+                match.put("field" + f, Arrays.asList(
+                        "%{SYNTHETIC_" + (f % files) + "_0:a} %{NESTED" + depth + ":n}",
+                        "%{SYNTHETIC_" + ((f + 1) % files) + "_" + (f % patternsPerFile) + ":a} %{IP:ip}",
+                        "%{SYSLOGBASE} %{GREEDYDATA:message}"));
+            }
+            Map<String, Object> config = new HashMap<>();
+            config.put(MATCH.name(), match);
+            config.put(PATTERNS_DIR.name(), Collections.singletonList(patternsDir.toString()));
+            config.put(PATTERN_DEFINITIONS.name(), patternDefinitions);
+            ConfigurationImpl configuration = new ConfigurationImpl(config);
+
+            System.out.printf("%d pattern files with %d patterns each, %d match fields, nesting depth %d%n",
+                    files, patternsPerFile, fields, depth);
+            System.out.printf("%-26s %12s %12s %14s%n", "phase", "min ms", "mean ms", "allocated MB");
+
+            Map<String, Supplier<Object>> phases = new LinkedHashMap<>();
+            List<Object> dirs = Collections.singletonList(patternsDir.toString());
+            Map<String, String> filePatterns = Jgrok.readPatternsFromDirs(dirs, "*");
+            Map<String, String> bank = Jgrok.loadPatternBank(configuration);
+            List<String> expressions = new ArrayList<>();
+            Grok expander = new Grok(bank, "%{INT}", ThreadWatchdog.noop());
+            for (Object patterns : match.values()) {
+                @SuppressWarnings("unchecked")
+                List<String> alternatives = (List<String>) patterns;
+                expressions.add(expander.toRegex(Jgrok.combinePatterns(alternatives)));
+            }
+
+            phases.put("read pattern files", () -> Jgrok.readPatternsFromDirs(dirs, "*"));
+            phases.put("merge pattern bank", () -> PatternBank.builtin()
+                    .overlay(new HashMap<>(filePatterns))
+                    .overlay(Jgrok.readPatternsFromConfig(patternDefinitions)));
+            phases.put("expand match entries", () -> {
+                List<String> expanded = new ArrayList<>();
+                for (Object patterns : match.values()) {
+                    @SuppressWarnings("unchecked")
+                    List<String> alternatives = (List<String>) patterns;
+                    expanded.add(expander.toRegex(Jgrok.combinePatterns(alternatives)));
+                }
+                return expanded;
+            });
+            phases.put("compile with joni", () -> {
+                List<Regex> regexes = new ArrayList<>();
+                for (String expression : expressions) {
+                    byte[] bytes = expression.getBytes(StandardCharsets.UTF_8);
+                    regexes.add(new Regex(bytes, 0, bytes.length, Option.NONE, UTF8Encoding.INSTANCE));
+                }
+                return regexes;
+            });
+            phases.put("Jgrok constructor", () -> new Jgrok("benchmark", configuration, new ContextImpl(null)));
+
+            com.sun.management.ThreadMXBean threadBean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            for (Map.Entry<String, Supplier<Object>> phase : phases.entrySet()) {
+                // the first run loads classes and warms up the JIT and is not reported
+                phase.getValue().get();
+                long minNanos = Long.MAX_VALUE;
+                long totalNanos = 0;
+                long allocated = 0;
+                for (int k = 0; k < iterations; k++) {
+                    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    phase.getValue().get();
+                    long elapsed = System.nanoTime() - start;
+                    allocated += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                    minNanos = Math.min(minNanos, elapsed);
+                    totalNanos += elapsed;
+                }
+                System.out.printf("%-26s %12.1f %12.1f %14.1f%n", phase.getKey(), minNanos / 1e6,
+                        totalNanos / 1e6 / iterations, allocated / 1e6 / iterations);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.list(patternsDir)) {
+                for (Path file : (Iterable<Path>) paths::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(patternsDir);
+        }
+        System.exit(0);
+    }
+
+    private static void writePatternFiles(Path dir, int files, int patternsPerFile) throws IOException {
+        for (int f = 0; f < files; f++) {
+            List<String> lines = new ArrayList<>();
+            for (int p = 0; p < patternsPerFile; p++) {
+                lines.add("SYNTHETIC_" + f + "_" + p + ", %{WORD}-" + p + "-%{NOTSPACE}");
+            }
+            Files.write(dir.resolve("synthetic" + f), lines, StandardCharsets.UTF_8);
+        }
+    }
+}
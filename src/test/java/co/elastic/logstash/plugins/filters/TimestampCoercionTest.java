@@ -0,0 +1,113 @@
+package co.elastic.logstash.plugins.filters;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.logstash.Timestamp;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+public class TimestampCoercionTest {
+
+    private static final long NOW = OffsetDateTime.parse("2019-03-15T12:00:00Z").toInstant().toEpochMilli();
+
+    @Test
+    public void testIso8601() {
+        assertParsed("2019-02-03T04:05:06.789Z", "2019-02-03T04:05:06.789Z");
+        assertParsed("2019-02-03T04:05:06,789Z", "2019-02-03T04:05:06.789Z");
+        assertParsed("2019-02-03 04:05:06.7891234+01:30", "2019-02-03T02:35:06.789Z");
+        assertParsed("2019-02-03T04:05:06-0500", "2019-02-03T09:05:06Z");
+        assertParsed("2019-02-03T04:05:06+05", "2019-02-02T23:05:06Z");
+        assertParsed("2019-02-03T04:05", "2019-02-03T04:05:00Z");
+        assertParsed("2019-2-3T0405:06", "2019-02-03T04:05:06Z");
+        assertParsed("2016-02-29 23:59:59.9", "2016-02-29T23:59:59.900Z");
+    }
+
+    @Test
+    public void testHttpDate() {
+        assertParsed("03/Feb/2019:04:05:06 +0000", "2019-02-03T04:05:06Z");
+        assertParsed("3/feb/2019:04:05:06 -0700", "2019-02-03T11:05:06Z");
+        assertParsed("31/December/1999:23:59:59 +0100", "1999-12-31T22:59:59Z");
+        assertParsed("03/Feb/19:04:05:06 +0000", "2019-02-03T04:05:06Z");
+    }
+
+    @Test
+    public void testSyslogTimestamp() {
+        assertParsed("Mar 15 12:00:00", "2019-03-15T12:00:00Z");
+        assertParsed("Feb  3 04:05:06", "2019-02-03T04:05:06Z");
+        assertParsed("Apr 10 00:00:00.250", "2019-04-10T00:00:00.250Z");
+        // more than a month into the future, so from last year
+        assertParsed("Dec 31 23:59:59", "2018-12-31T23:59:59Z");
+        assertParsed("Feb 29 10:00:00", "2016-02-29T10:00:00Z", "2017-03-01T00:00:00Z");
+    }
+
+    @Test
+    public void testOtherFormats() {
+        assertParsed("Sun, 3 Feb 2019 04:05:06 GMT", "2019-02-03T04:05:06Z");
+        assertParsed("20190203040506", "2019-02-03T04:05:06Z");
+    }
+
+    @Test
+    public void testInvalidTimestamps() {
+        for (String value : new String[]{"", "2019", "2019-13-01T00:00", "2019-02-30T00:00", "2019-02-03T24:00",
+                "32/Feb/2019:04:05:06 +0000", "03/Foo/2019:04:05:06 +0000", "Foo 3 04:05:06", "Feb 3 04:60:00",
+                "2019-02-03T04:05:06+", "hello world"}) {
+            try {
+                TimestampCoercion.parse(bytes(value), 1, bytes(value).length - 1, NOW);
+                Assert.fail("Expected '" + value + "' to be rejected");
+            } catch (IllegalArgumentException ex) {
+                Assert.assertTrue(ex.getMessage(), ex.getMessage().contains(value));
+            }
+        }
+    }
+
+    @Test
+    public void testParityWithFormatters() {
+        DateTimeFormatter iso = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
+        DateTimeFormatter httpDate = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss xx", Locale.ENGLISH);
+        Random random = new Random(11);
+        for (int k = 0; k < 10000; k++) {
+            OffsetDateTime time = OffsetDateTime.ofInstant(
+                    java.time.Instant.ofEpochMilli(random.nextLong() % 8_000_000_000_000L + 1_000_000_000_000L),
+                    ZoneOffset.ofTotalSeconds((random.nextInt(28 * 4) - 14 * 4) * 900));
+            long expected = time.toInstant().toEpochMilli();
+            Assert.assertEquals(iso.format(time), expected, parse(iso.format(time)));
+            long expectedSeconds = expected - Math.floorMod(expected, 1000);
+            Assert.assertEquals(httpDate.format(time), expectedSeconds, parse(httpDate.format(time)));
+        }
+    }
+
+    @Test
+    public void testCoercion() {
+        byte[] bytes = bytes("03/Feb/2019:04:05:06 +0000");
+        long expected = OffsetDateTime.parse("2019-02-03T04:05:06Z").toInstant().toEpochMilli();
+        Assert.assertEquals(expected, NumericCoercion.coerce(bytes, 1, bytes.length - 1, "epoch_millis"));
+        Assert.assertEquals(new Timestamp(expected), NumericCoercion.coerce(bytes, 1, bytes.length - 1, "timestamp"));
+        Assert.assertEquals(expected, NumericCoercion.coerce("2019-02-03T04:05:06Z", "epoch_millis"));
+        Assert.assertEquals(new Timestamp(expected), NumericCoercion.coerce("2019-02-03T04:05:06Z", "timestamp"));
+    }
+
+    private static void assertParsed(String value, String expected) {
+        assertParsed(value, expected, "2019-03-15T12:00:00Z");
+    }
+
+    private static void assertParsed(String value, String expected, String now) {
+        byte[] bytes = bytes(value);
+        long nowMillis = OffsetDateTime.parse(now).toInstant().toEpochMilli();
+        Assert.assertEquals(value, OffsetDateTime.parse(expected).toInstant().toEpochMilli(),
+                TimestampCoercion.parse(bytes, 1, bytes.length - 1, nowMillis));
+    }
+
+    private static long parse(String value) {
+        byte[] bytes = bytes(value);
+        return TimestampCoercion.parse(bytes, 1, bytes.length - 1, NOW);
+    }
+
+    private static byte[] bytes(String value) {
+        return ("<" + value + ">").getBytes(StandardCharsets.UTF_8);
+    }
+}